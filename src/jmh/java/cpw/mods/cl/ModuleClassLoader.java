@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cpw.mods.cl;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Stand-in for the ModLauncher 8+ class loader, only the fallback used by {@code MixinBootstrap#setFallbackClassLoader}
+ * is modelled.
+ * <p>
+ * Classes are served from the given jars and the platform ClassLoader, anything else is delegated to the fallback
+ * ClassLoader the same way packages outside of the module layers are.
+ */
+public class ModuleClassLoader extends URLClassLoader {
+    
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+    
+    private volatile ClassLoader fallbackClassLoader;
+    
+    public ModuleClassLoader(URL[] urls) {
+        // Platform ClassLoader on Java 9+, Extension ClassLoader on Java 8
+        super(urls, ClassLoader.getSystemClassLoader().getParent());
+    }
+    
+    public void setFallbackClassLoader(ClassLoader fallbackClassLoader) {
+        this.fallbackClassLoader = fallbackClassLoader;
+    }
+    
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        try {
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException ex) {
+            ClassLoader classLoader = fallbackClassLoader;
+            if (classLoader == null) {
+                throw ex;
+            }
+            
+            return classLoader.loadClass(name);
+        }
+    }
+}
\ No newline at end of file
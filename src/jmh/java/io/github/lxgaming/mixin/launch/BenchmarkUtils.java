@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BenchmarkUtils {
+    
+    /**
+     * Optional class list recorded by {@link ClassListRecorder} during a launch which replaces {@code class-names.txt},
+     * passed to the benchmark JVM as {@code -Dmixinbootstrap.benchmark.classList=<file>} or through
+     * {@code ./gradlew jmh -Pjmh.classList=<file>}.
+     */
+    public static final String CLASS_LIST_PROPERTY = MixinBootstrap.ID + ".benchmark.classList";
+    
+    /**
+     * Class names resolved during a modded launch, see {@code class-names.txt}, or those from
+     * {@link #CLASS_LIST_PROPERTY} when set.
+     */
+    public static List<String> getClassNames() throws IOException {
+        String property = System.getProperty(CLASS_LIST_PROPERTY);
+        if (property != null && !property.isEmpty()) {
+            return getClassNames(Paths.get(property));
+        }
+        
+        InputStream inputStream = BenchmarkUtils.class.getResourceAsStream("/class-names.txt");
+        if (inputStream == null) {
+            throw new IOException("class-names.txt is missing");
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * The archivable classes from the class list followed by the remaining classes from the {@code .csv} report next
+     * to it.
+     */
+    private static List<String> getClassNames(Path path) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>();
+        try (Stream<String> stream = Files.lines(path, StandardCharsets.UTF_8)) {
+            stream.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#") && !line.startsWith("@"))
+                    .map(line -> line.replace('/', '.'))
+                    .forEach(classNames::add);
+        }
+        
+        Path reportPath = path.resolveSibling(path.getFileName() + ".csv");
+        if (Files.isRegularFile(reportPath)) {
+            try (Stream<String> stream = Files.lines(reportPath, StandardCharsets.UTF_8)) {
+                stream.skip(1L)
+                        .map(line -> line.substring(0, Math.max(0, line.indexOf(','))))
+                        .filter(line -> !line.isEmpty())
+                        .forEach(classNames::add);
+            }
+        }
+        
+        if (classNames.isEmpty()) {
+            throw new IOException(path + " does not contain any classes");
+        }
+        
+        return new ArrayList<>(classNames);
+    }
+    
+    public static void delete(Path path) throws IOException {
+        if (Files.notExists(path)) {
+            return;
+        }
+        
+        try (Stream<Path> stream = Files.walk(path)) {
+            for (Path childPath : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(childPath);
+            }
+        }
+    }
+}
\ No newline at end of file
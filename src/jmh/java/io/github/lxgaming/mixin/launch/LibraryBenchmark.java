@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Library extraction performed by {@code MixinBootstrap#appendToClassPath} on ModLauncher 4.x - 7.x.
+ * <p>
+ * The ASM jars from the benchmark class path stand in for the bundled asm-analysis and asm-util.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class LibraryBenchmark {
+    
+    private Path directory;
+    private Path jarPath;
+    private FileSystem fileSystem;
+    private List<Path> libraries;
+    private LibraryCache warmLibraryCache;
+    private Path coldDirectory;
+    private List<Path> temporaryPaths;
+    
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.directory = Files.createTempDirectory(MixinBootstrap.ID + "-benchmark-");
+        this.jarPath = directory.resolve("MixinBootstrap.jar");
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            for (Class<?> libraryClass : new Class<?>[]{Type.class, ClassNode.class}) {
+                Path path = Paths.get(libraryClass.getProtectionDomain().getCodeSource().getLocation().toURI());
+                outputStream.putNextEntry(new ZipEntry("META-INF/libraries/" + path.getFileName()));
+                Files.copy(path, outputStream);
+                outputStream.closeEntry();
+            }
+        }
+        
+        this.fileSystem = FileSystems.newFileSystem(URI.create("jar:" + jarPath.toUri()), Collections.emptyMap());
+        try (Stream<Path> stream = Files.list(fileSystem.getPath("META-INF", "libraries"))) {
+            this.libraries = stream.collect(Collectors.toList());
+        }
+        
+        this.warmLibraryCache = new LibraryCache(Files.createDirectories(directory.resolve("warm")));
+        for (Path path : libraries) {
+            warmLibraryCache.getPath(path);
+        }
+        
+        this.temporaryPaths = new ArrayList<>();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileSystem.close();
+        BenchmarkUtils.delete(directory);
+    }
+    
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws IOException {
+        this.coldDirectory = Files.createTempDirectory(directory, "cold-");
+    }
+    
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws IOException {
+        BenchmarkUtils.delete(coldDirectory);
+        for (Path path : temporaryPaths) {
+            Files.deleteIfExists(path);
+        }
+        
+        temporaryPaths.clear();
+    }
+    
+    /**
+     * The original behaviour, a new temporary file for every library on every launch.
+     */
+    @Benchmark
+    public void temporaryFile(Blackhole blackhole) throws IOException {
+        for (Path path : libraries) {
+            Path temporaryPath = Files.createTempFile(directory, MixinBootstrap.ID + "-", ".jar");
+            Files.copy(path, temporaryPath, StandardCopyOption.REPLACE_EXISTING);
+            temporaryPaths.add(temporaryPath);
+            blackhole.consume(temporaryPath);
+        }
+    }
+    
+    @Benchmark
+    public void cacheCold(Blackhole blackhole) throws IOException {
+        LibraryCache libraryCache = new LibraryCache(coldDirectory);
+        for (Path path : libraries) {
+            blackhole.consume(libraryCache.getPath(path));
+        }
+    }
+    
+    @Benchmark
+    public void cacheWarm(Blackhole blackhole) throws IOException {
+        for (Path path : libraries) {
+            blackhole.consume(warmLibraryCache.getPath(path));
+        }
+    }
+    
+    @Benchmark
+    public void memory(Blackhole blackhole) throws IOException {
+        ZipIndex zipIndex = ZipIndex.map(jarPath);
+        NestedJarHandler nestedJarHandler = new NestedJarHandler();
+        for (ZipIndex.Entry entry : zipIndex.getEntries()) {
+            blackhole.consume(nestedJarHandler.register(zipIndex, entry));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups through the fallback ClassLoader installed for ModLauncher 8+.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class MixinClassLoaderBenchmark {
+    
+    private static final int MISSING_CLASSES = 8192;
+    
+    private MixinClassLoader classLoader;
+    private String[] missingClasses;
+    
+    @Setup
+    public void setup() {
+        // Platform ClassLoader on Java 9+, Extension ClassLoader on Java 8
+        ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+        this.classLoader = new MixinClassLoader(parent, MixinClassLoaderBenchmark.class.getClassLoader());
+        this.missingClasses = new String[MISSING_CLASSES];
+        for (int index = 0; index < missingClasses.length; index++) {
+            missingClasses[index] = "io.github.lxgaming.mixin.launch.Missing" + index;
+        }
+    }
+    
+    @Benchmark
+    public Class<?> hit() throws ClassNotFoundException {
+        return classLoader.loadClass("io.github.lxgaming.mixin.launch.PackageFilter");
+    }
+    
+    @Benchmark
+    public Object miss() {
+        return loadClass("io.github.lxgaming.mixin.launch.Missing");
+    }
+    
+    /**
+     * Cycles through more missing classes than the negative cache holds.
+     */
+    @Benchmark
+    public Object missEvicting(ThreadState threadState) {
+        return loadClass(missingClasses[threadState.next()]);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Object concurrentMiss() {
+        return loadClass("io.github.lxgaming.mixin.launch.Missing");
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Object concurrentMissEvicting(ThreadState threadState) {
+        return loadClass(missingClasses[threadState.next()]);
+    }
+    
+    private Object loadClass(String name) {
+        try {
+            return classLoader.loadClass(name);
+        } catch (ClassNotFoundException ex) {
+            return ex;
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class ThreadState {
+        
+        private int index;
+        
+        public int next() {
+            index = (index + 1) % MISSING_CLASSES;
+            return index;
+        }
+    }
+}
\ No newline at end of file
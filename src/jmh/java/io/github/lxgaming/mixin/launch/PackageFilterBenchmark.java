@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Target package filter evaluated by the TransformingClassLoader for every class name from
+ * {@link BenchmarkUtils#getClassNames()}, using the packages skipped by {@link MixinLaunchPluginService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+public class PackageFilterBenchmark {
+    
+    private String[] classNames;
+    private Predicate<String> streamFilter;
+    private Predicate<String> packageFilter;
+    
+    @Setup
+    public void setup() throws Exception {
+        this.classNames = BenchmarkUtils.getClassNames().toArray(new String[0]);
+        this.streamFilter = name -> MixinLaunchPluginService.SKIP_PACKAGES.stream().noneMatch(name::startsWith);
+        this.packageFilter = PackageFilter.of(MixinLaunchPluginService.SKIP_PACKAGES).negate();
+    }
+    
+    @Benchmark
+    public void stream(Blackhole blackhole) {
+        for (String className : classNames) {
+            blackhole.consume(streamFilter.test(className));
+        }
+    }
+    
+    @Benchmark
+    public void packageFilter(Blackhole blackhole) {
+        for (String className : classNames) {
+            blackhole.consume(packageFilter.test(className));
+        }
+    }
+}
\ No newline at end of file
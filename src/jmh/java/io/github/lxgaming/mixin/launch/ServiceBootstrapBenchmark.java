@@ -0,0 +1,363 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import io.github.lxgaming.classloader.ClassLoaderUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.util.Textifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Constructs and loads {@link MixinTransformationService} through the headless {@link StandInLauncher} then loads the
+ * target classes, entirely offline.
+ * <p>
+ * This is a service construction and class loading microbenchmark, not an end-to-end launch. ModLauncher is never
+ * run, no mixins are applied and the game is not started, the numbers are not launch times. An end-to-end launch
+ * needs the game and its libraries and is not covered by the benchmarks.
+ * <p>
+ * Every invocation runs in a new ClassLoader over a jar laid out like the release jar, {@code legacy} takes the
+ * ModLauncher 4.x - 7.x path with the ModLauncher on the class path while {@code modular} only defines the API package
+ * with specification version 8.0 and installs the {@link cpw.mods.cl.ModuleClassLoader} stand-in, which is a plain
+ * {@link URLClassLoader} rather than the ModLauncher 8+ module layer. A cold start begins without
+ * {@code <gamedir>/.mixinbootstrap}, a warm start reuses the one left by the previous invocation. The mods directory
+ * holds generated jars, each with a manifest and its target classes. Run with {@code -prof gc} for the allocation
+ * of each invocation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(value = 3, jvmArgsAppend = {"-XX:+IgnoreUnrecognizedVMOptions", "--add-opens=java.base/java.net=ALL-UNNAMED"})
+@Measurement(iterations = 10)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+public class ServiceBootstrapBenchmark {
+    
+    private static final String SERVICE = "META-INF/services/cpw.mods.modlauncher.api.ITransformationService";
+    
+    @Param({StandInLauncher.LEGACY, StandInLauncher.MODULAR})
+    public String launcher;
+    
+    @Param({"cold", "warm"})
+    public String start;
+    
+    /**
+     * Enables {@code mixinbootstrap.async} and {@code mixinbootstrap.scan}.
+     */
+    @Param({"false", "true"})
+    public boolean optimized;
+    
+    @Param({"100"})
+    public int mods;
+    
+    @Param({"10"})
+    public int targets;
+    
+    private Path directory;
+    private Path gamePath;
+    private URL[] urls;
+    private URL[] modUrls;
+    private List<String> classNames;
+    private URLClassLoader classLoader;
+    private Callable<?> bootstrap;
+    
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        System.setProperty(MixinBootstrap.ID + ".async", Boolean.toString(optimized));
+        System.setProperty(ManifestScanner.PROPERTY, Boolean.toString(optimized));
+        
+        this.directory = Files.createTempDirectory(MixinBootstrap.ID + "-benchmark-");
+        this.gamePath = directory.resolve("game");
+        this.classNames = new ArrayList<>();
+        List<URL> modUrls = new ArrayList<>();
+        Path modsPath = Files.createDirectories(gamePath.resolve("mods"));
+        for (int index = 0; index < mods; index++) {
+            Path path = modsPath.resolve("mod" + index + ".jar");
+            createMod(path, "synthetic/mod" + index, targets);
+            modUrls.add(path.toUri().toURL());
+            for (int target = 0; target < targets; target++) {
+                classNames.add("synthetic.mod" + index + ".Target" + target);
+            }
+        }
+        
+        // Resolved through the fallback ClassLoader on the modular path
+        classNames.add("org.spongepowered.asm.mixin.Mixins");
+        this.modUrls = modUrls.toArray(new URL[0]);
+        
+        Set<Path> roots = new LinkedHashSet<>();
+        roots.add(getPath(MixinBootstrap.class));
+        roots.addAll(getServiceRoots());
+        Set<Path> shadedRoots = new LinkedHashSet<>();
+        shadedRoots.add(getPath(org.spongepowered.asm.launch.MixinBootstrap.class));
+        shadedRoots.add(getPath(ClassLoaderUtils.class));
+        Set<Path> libraries = new LinkedHashSet<>();
+        libraries.add(getPath(Analyzer.class));
+        libraries.add(getPath(Textifier.class));
+        
+        Path jarPath = directory.resolve("MixinBootstrap.jar");
+        createJar(jarPath, roots, shadedRoots, libraries);
+        
+        // Everything else on the class path, ModLauncher, Log4j and the stand-ins
+        List<URL> urls = new ArrayList<>();
+        urls.add(jarPath.toUri().toURL());
+        for (String value : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Paths.get(value).toAbsolutePath().normalize();
+            if (!value.isEmpty() && !roots.contains(path) && !shadedRoots.contains(path) && !libraries.contains(path)) {
+                urls.add(path.toUri().toURL());
+            }
+        }
+        
+        this.urls = urls.toArray(new URL[0]);
+        
+        if (start.equals("warm")) {
+            setupInvocation();
+            bootstrap.call();
+            tearDownInvocation();
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkUtils.delete(directory);
+    }
+    
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws Exception {
+        if (start.equals("cold")) {
+            BenchmarkUtils.delete(gamePath.resolve("." + MixinBootstrap.ID));
+        }
+        
+        this.classLoader = new BootstrapClassLoader(urls, launcher.equals(StandInLauncher.MODULAR) ? "8.0" : null);
+        this.bootstrap = (Callable<?>) Class.forName(StandInLauncher.class.getName(), true, classLoader)
+                .getConstructor(String.class, Path.class, URL[].class, List.class)
+                .newInstance(launcher, gamePath, modUrls, classNames);
+    }
+    
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws IOException {
+        ((Closeable) bootstrap).close();
+        classLoader.close();
+    }
+    
+    @Benchmark
+    public Object bootstrap() throws Exception {
+        return bootstrap.call();
+    }
+    
+    /**
+     * Mirrors the {@code jar} task, the shaded dependencies are merged and the libraries are nested.
+     */
+    private static void createJar(Path path, Set<Path> roots, Set<Path> shadedRoots, Set<Path> libraries) throws IOException {
+        Set<String> names = new HashSet<>();
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (Path root : roots) {
+                copy(root, outputStream, names, false);
+            }
+            
+            for (Path root : shadedRoots) {
+                copy(root, outputStream, names, true);
+            }
+            
+            for (Path library : libraries) {
+                outputStream.putNextEntry(new ZipEntry("META-INF/libraries/" + library.getFileName()));
+                Files.copy(library, outputStream);
+                outputStream.closeEntry();
+            }
+        }
+    }
+    
+    private static void copy(Path root, ZipOutputStream outputStream, Set<String> names, boolean shaded) throws IOException {
+        if (Files.isDirectory(root)) {
+            List<Path> paths;
+            try (Stream<Path> stream = Files.walk(root)) {
+                paths = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            
+            for (Path path : paths) {
+                String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+                if (isIncluded(name, shaded) && names.add(name)) {
+                    outputStream.putNextEntry(new ZipEntry(name));
+                    Files.copy(path, outputStream);
+                    outputStream.closeEntry();
+                }
+            }
+            
+            return;
+        }
+        
+        try (ZipFile zipFile = new ZipFile(root.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isIncluded(entry.getName(), shaded) || !names.add(entry.getName())) {
+                    continue;
+                }
+                
+                outputStream.putNextEntry(new ZipEntry(entry.getName()));
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    copy(inputStream, outputStream);
+                }
+                
+                outputStream.closeEntry();
+            }
+        }
+    }
+    
+    private static boolean isIncluded(String name, boolean shaded) {
+        if (name.equals("META-INF/MANIFEST.MF") || name.endsWith("module-info.class")) {
+            return false;
+        }
+        
+        if (!shaded) {
+            return true;
+        }
+        
+        return !name.startsWith("META-INF/services/cpw.mods.modlauncher.")
+                && !name.startsWith("META-INF/services/org.spongepowered.asm.service.")
+                && !(name.startsWith("META-INF/") && (name.endsWith(".RSA") || name.endsWith(".SF")));
+    }
+    
+    /**
+     * A jar with a manifest and the given number of target classes.
+     */
+    private static void createMod(Path path, String packageName, int targets) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        
+        try (JarOutputStream outputStream = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            for (int index = 0; index < targets; index++) {
+                String target = packageName + "/Target" + index;
+                outputStream.putNextEntry(new ZipEntry(target + ".class"));
+                outputStream.write(createClass(target));
+                outputStream.closeEntry();
+            }
+        }
+    }
+    
+    private static byte[] createClass(String name) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+    
+    /**
+     * The output directories which hold the service declaration of {@link MixinTransformationService}.
+     */
+    private static Set<Path> getServiceRoots() throws Exception {
+        Set<Path> roots = new LinkedHashSet<>();
+        Enumeration<URL> enumeration = MixinBootstrap.class.getClassLoader().getResources(SERVICE);
+        while (enumeration.hasMoreElements()) {
+            URL url = enumeration.nextElement();
+            try (Scanner scanner = new Scanner(url.openStream(), "UTF-8").useDelimiter("\\A")) {
+                String value = scanner.hasNext() ? scanner.next() : "";
+                if (!value.contains(MixinTransformationService.class.getName())) {
+                    continue;
+                }
+            }
+            
+            if (url.getProtocol().equals("jar")) {
+                roots.add(Paths.get(((JarURLConnection) url.openConnection()).getJarFileURL().toURI()).toAbsolutePath().normalize());
+            } else {
+                Path path = Paths.get(url.toURI());
+                for (int index = 0; index < SERVICE.split("/").length; index++) {
+                    path = path.getParent();
+                }
+                
+                roots.add(path.toAbsolutePath().normalize());
+            }
+        }
+        
+        return roots;
+    }
+    
+    private static Path getPath(Class<?> type) throws Exception {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toAbsolutePath().normalize();
+    }
+    
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] bytes = new byte[8192];
+        int length;
+        while ((length = inputStream.read(bytes)) != -1) {
+            outputStream.write(bytes, 0, length);
+        }
+    }
+    
+    /**
+     * Parent-less ClassLoader for a single invocation.
+     */
+    private static class BootstrapClassLoader extends URLClassLoader {
+        
+        private BootstrapClassLoader(URL[] urls, String specificationVersion) {
+            // Platform ClassLoader on Java 9+, Extension ClassLoader on Java 8
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+            if (specificationVersion != null) {
+                // Reported by IEnvironment.class.getPackage(), which selects the path MixinBootstrap takes
+                definePackage("cpw.mods.modlauncher.api", null, specificationVersion, null, null, null, null, null);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.cl.ModuleClassLoader;
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IEnvironment;
+import org.apache.logging.log4j.LogManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Headless stand-in for the {@link Launcher} driven by {@link ServiceBootstrapBenchmark}, a new instance of this class
+ * is loaded by a fresh ClassLoader for every invocation so no static state is shared between invocations.
+ * <p>
+ * The {@link Launcher} is constructed without being run, which leaves the environment and launch plugins in the state
+ * the transformation services are constructed in. Nothing past {@link MixinTransformationService#onLoad} is run, so no
+ * transformers are built and no mixins are applied. Only the types from {@code java.base} are passed in or out.
+ */
+public class StandInLauncher implements Callable<Integer>, Closeable {
+    
+    public static final String LEGACY = "legacy";
+    public static final String MODULAR = "modular";
+    
+    private final ClassLoader contextClassLoader;
+    private final URLClassLoader gameClassLoader;
+    private final List<String> classNames;
+    
+    public StandInLauncher(String launcher, Path gamePath, URL[] modUrls, List<String> classNames) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader previousClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(StandInLauncher.class.getClassLoader());
+        try {
+            // ModLauncher has configured Log4j by the time the transformation services are constructed
+            LogManager.getContext(false);
+            
+            // Assigns Launcher.INSTANCE and loads the launch plugins through the context ClassLoader
+            Constructor<Launcher> launcherConstructor = Launcher.class.getDeclaredConstructor();
+            launcherConstructor.setAccessible(true);
+            launcherConstructor.newInstance();
+            Launcher.INSTANCE.environment().computePropertyIfAbsent(IEnvironment.Keys.GAMEDIR.get(), key -> gamePath);
+        } finally {
+            thread.setContextClassLoader(previousClassLoader);
+        }
+        
+        if (MODULAR.equals(launcher)) {
+            // Only the ModLauncher 8+ fallback is modelled, the API is reported as 8.0 by the benchmark ClassLoader
+            ModuleClassLoader moduleClassLoader = new ModuleClassLoader(modUrls);
+            this.contextClassLoader = moduleClassLoader;
+            this.gameClassLoader = moduleClassLoader;
+        } else if (LEGACY.equals(launcher)) {
+            // Stands in for the TransformingClassLoader, classes are loaded without being transformed
+            this.contextClassLoader = StandInLauncher.class.getClassLoader();
+            this.gameClassLoader = new URLClassLoader(modUrls, contextClassLoader);
+        } else {
+            throw new IllegalArgumentException("Unsupported launcher: " + launcher);
+        }
+        
+        this.classNames = classNames;
+    }
+    
+    /**
+     * Constructs and loads {@link MixinTransformationService} then resolves the classes through the game ClassLoader
+     * without initializing them, returns the number of classes resolved.
+     */
+    @Override
+    public Integer call() throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader previousClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(contextClassLoader);
+        try {
+            MixinTransformationService transformationService = new MixinTransformationService();
+            transformationService.onLoad(Launcher.INSTANCE.environment(), Collections.emptySet());
+            
+            int count = 0;
+            for (String className : classNames) {
+                Class.forName(className, false, gameClassLoader);
+                count++;
+            }
+            
+            return count;
+        } finally {
+            thread.setContextClassLoader(previousClassLoader);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        gameClassLoader.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.util.Collection;
+
+/**
+ * Immutable Bloom filter over strings, {@link #mightContain(String)} never returns {@code false} for an added value.
+ * <p>
+ * The bit count is rounded up to a power of two and the probe positions are derived from {@link String#hashCode()}
+ * using double hashing.
+ */
+public class BloomFilter {
+    
+    private final long[] words;
+    private final int mask;
+    private final int hashes;
+    
+    private BloomFilter(int bits, int hashes) {
+        this.words = new long[bits >>> 6];
+        this.mask = bits - 1;
+        this.hashes = hashes;
+    }
+    
+    public static BloomFilter of(Collection<String> values, double falsePositiveRate) {
+        int count = Math.max(1, values.size());
+        double bits = -count * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int size = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(64, Math.ceil(bits))) - 1) << 1;
+        int hashes = (int) Math.max(1, Math.min(16, Math.round(size / (double) count * Math.log(2))));
+        
+        BloomFilter bloomFilter = new BloomFilter(size, hashes);
+        for (String value : values) {
+            bloomFilter.add(value);
+        }
+        
+        return bloomFilter;
+    }
+    
+    public boolean mightContain(String value) {
+        long hash = mix(value.hashCode());
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int index = 0; index < hashes; index++) {
+            int bit = (hash1 + index * hash2) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    public int getBits() {
+        return mask + 1;
+    }
+    
+    public int getHashes() {
+        return hashes;
+    }
+    
+    private void add(String value) {
+        long hash = mix(value.hashCode());
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int index = 0; index < hashes; index++) {
+            int bit = (hash1 + index * hash2) & mask;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+    
+    /**
+     * MurmurHash3 64-bit finalizer, spreads the 32-bit hash code over both halves.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
\ No newline at end of file
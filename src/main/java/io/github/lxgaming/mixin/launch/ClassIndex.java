@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index generated by the {@code generateClassIndex} task and stored as {@code META-INF/mixinbootstrap.index}.
+ * <p>
+ * Holds the packages of the jar itself and the central directory of every library under {@code META-INF/libraries},
+ * the libraries are copied verbatim so their entry offsets are known at build time. The offsets of the jar itself are
+ * not recorded as they change when the jar is signed.
+ */
+public class ClassIndex {
+    
+    public static final String NAME = "META-INF/" + MixinBootstrap.ID + ".index";
+    private static final int MAGIC = 0x4D424349;
+    private static final int VERSION = 1;
+    
+    private final Set<String> packages;
+    private final Map<String, List<ZipIndex.Entry>> libraries;
+    
+    private ClassIndex(Set<String> packages, Map<String, List<ZipIndex.Entry>> libraries) {
+        this.packages = packages;
+        this.libraries = libraries;
+    }
+    
+    /**
+     * Reads the index from the jar, returns {@code null} if it is missing or unreadable.
+     */
+    public static ClassIndex load(ZipIndex zipIndex) {
+        ZipIndex.Entry entry = zipIndex.getEntry(NAME);
+        if (entry == null) {
+            return null;
+        }
+        
+        try (InputStream inputStream = zipIndex.getInputStream(entry)) {
+            return read(inputStream);
+        } catch (IOException ex) {
+            MixinBootstrap.LOGGER.debug("Failed to read {}", NAME, ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the index next to the class, returns {@code null} if it is missing or unreadable.
+     */
+    public static ClassIndex load(Class<?> targetClass) {
+        try (InputStream inputStream = targetClass.getResourceAsStream("/" + NAME)) {
+            return inputStream != null ? read(inputStream) : null;
+        } catch (IOException ex) {
+            MixinBootstrap.LOGGER.debug("Failed to read {}", NAME, ex);
+            return null;
+        }
+    }
+    
+    public static ClassIndex read(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        if (dataInputStream.readInt() != MAGIC) {
+            throw new IOException("Invalid magic");
+        }
+        
+        int version = dataInputStream.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        
+        int packageCount = dataInputStream.readInt();
+        Set<String> packages = new HashSet<>(packageCount * 4 / 3 + 1);
+        for (int index = 0; index < packageCount; index++) {
+            packages.add(dataInputStream.readUTF());
+        }
+        
+        int libraryCount = dataInputStream.readInt();
+        Map<String, List<ZipIndex.Entry>> libraries = new LinkedHashMap<>(libraryCount * 4 / 3 + 1);
+        for (int index = 0; index < libraryCount; index++) {
+            String name = dataInputStream.readUTF();
+            int entryCount = dataInputStream.readInt();
+            List<ZipIndex.Entry> entries = new ArrayList<>(entryCount);
+            for (int entryIndex = 0; entryIndex < entryCount; entryIndex++) {
+                String entryName = dataInputStream.readUTF();
+                int method = dataInputStream.readUnsignedShort();
+                int compressedSize = dataInputStream.readInt();
+                int size = dataInputStream.readInt();
+                int localHeaderOffset = dataInputStream.readInt();
+                entries.add(new ZipIndex.Entry(entryName, method, compressedSize, size, localHeaderOffset));
+            }
+            
+            libraries.put(name, Collections.unmodifiableList(entries));
+        }
+        
+        return new ClassIndex(Collections.unmodifiableSet(packages), Collections.unmodifiableMap(libraries));
+    }
+    
+    /**
+     * Packages of the classes in the jar itself, including the shaded dependencies.
+     */
+    public Set<String> getPackages() {
+        return packages;
+    }
+    
+    /**
+     * File names of the libraries under {@code META-INF/libraries}.
+     */
+    public Set<String> getLibraries() {
+        return libraries.keySet();
+    }
+    
+    /**
+     * Entries of the library, {@code null} if it is not indexed.
+     */
+    public List<ZipIndex.Entry> getEntries(String library) {
+        return libraries.get(library);
+    }
+}
\ No newline at end of file
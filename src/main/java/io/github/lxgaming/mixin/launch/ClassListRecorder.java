@@ -0,0 +1,285 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the classes loaded during launch as a class list for {@code -XX:SharedClassListFile},
+ * enabled with {@code -Dmixinbootstrap.classList=<file>}.
+ * <p>
+ * Classes are observed through {@link ObserverLaunchPluginService}, the {@link MixinClassLoader} fallback and the
+ * jars appended to the class path. On ModLauncher 4.x - 7.x this jar is appended as well, so Mixin and the shaded
+ * dependencies are found by the same {@code findLoadedClass} sweep as the libraries. Only classes defined by the boot,
+ * platform or application ClassLoader can be archived, everything else is written to {@code <file>.csv} along with
+ * the reason it was left out.
+ */
+public class ClassListRecorder {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".classList";
+    private static final String DEFAULT_FILE = MixinBootstrap.ID + ".classlist";
+    private static final String TRANSFORMING_CLASS_LOADER = "cpw.mods.modlauncher.TransformingClassLoader";
+    private static final Path PATH = getPath();
+    private static final boolean ENABLED = PATH != null;
+    private static final Set<String> CLASSES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final Queue<Record> RECORDS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Library> LIBRARIES = new ConcurrentLinkedQueue<>();
+    
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ClassListRecorder::report, MixinBootstrap.NAME + " Class List"));
+        }
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static void record(Class<?> loadedClass) {
+        if (ENABLED && CLASSES.add(loadedClass.getName())) {
+            String reason = getReason(loadedClass);
+            RECORDS.add(new Record(loadedClass.getName(), getClassLoaderName(loadedClass.getClassLoader()), reason == null, reason));
+        }
+    }
+    
+    /**
+     * Records a class defined by the {@code TransformingClassLoader}, these are never archivable.
+     */
+    public static void recordTransformed(String className) {
+        if (ENABLED && CLASSES.add(className)) {
+            RECORDS.add(new Record(className, TRANSFORMING_CLASS_LOADER, false, "Transformed at runtime"));
+        }
+    }
+    
+    /**
+     * Registers a library appended to the {@link ClassLoader}, the classes from it which have been loaded by the
+     * time the JVM shuts down are added to the class list.
+     *
+     * @param path the library on disk or {@code null} when it is served from memory
+     */
+    public static void addLibrary(ClassLoader classLoader, Path path, ZipIndex zipIndex) {
+        if (!ENABLED) {
+            return;
+        }
+        
+        List<String> classNames = new ArrayList<>();
+        for (ZipIndex.Entry entry : zipIndex.getEntries()) {
+            String name = entry.getName();
+            if (name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class")) {
+                classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+            }
+        }
+        
+        LIBRARIES.add(new Library(classLoader, path, classNames));
+    }
+    
+    public static synchronized void report() {
+        if (!ENABLED) {
+            return;
+        }
+        
+        MethodHandle findLoadedClass = getFindLoadedClass();
+        if (findLoadedClass == null && !LIBRARIES.isEmpty()) {
+            MixinBootstrap.LOGGER.warn("Unable to access ClassLoader#findLoadedClass, library classes will be missing from {}", PATH);
+        }
+        
+        Set<String> classPath = getClassPath();
+        for (Library library : findLoadedClass != null ? LIBRARIES : Collections.<Library>emptyList()) {
+            String reason = null;
+            if (library.path == null) {
+                reason = "Served from memory, use " + MixinBootstrap.ID + ".libraries.mode=cache";
+            } else if (!classPath.contains(library.path.toAbsolutePath().normalize().toString())) {
+                reason = "Add " + library.path + " to the class path";
+            }
+            
+            for (String className : library.classNames) {
+                Class<?> loadedClass = findLoadedClass(findLoadedClass, library.classLoader, className);
+                if (loadedClass != null && CLASSES.add(className)) {
+                    // Listed regardless, the archive picks them up once the library is on the class path
+                    String loadedReason = getReason(loadedClass);
+                    RECORDS.add(new Record(className, getClassLoaderName(loadedClass.getClassLoader()), loadedReason == null && library.path != null, loadedReason != null ? loadedReason : reason));
+                }
+            }
+        }
+        
+        List<Record> records = new ArrayList<>(RECORDS);
+        int archivable = 0;
+        Path reportPath = PATH.resolveSibling(PATH.getFileName() + ".csv");
+        try (BufferedWriter classListWriter = Files.newBufferedWriter(PATH, StandardCharsets.UTF_8);
+             BufferedWriter reportWriter = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+            reportWriter.write("class,classloader,reason");
+            reportWriter.newLine();
+            for (Record record : records) {
+                if (record.archivable) {
+                    classListWriter.write(record.name.replace('.', '/'));
+                    classListWriter.newLine();
+                    archivable++;
+                }
+                
+                if (record.reason != null) {
+                    reportWriter.write(String.format("%s,%s,\"%s\"", record.name, record.classLoader, record.reason));
+                    reportWriter.newLine();
+                }
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.error("Encountered an error while writing {}", PATH, ex);
+            return;
+        }
+        
+        MixinBootstrap.LOGGER.info("Recorded {} classes, {} archivable ({})", records.size(), archivable, PATH);
+    }
+    
+    private static String getReason(Class<?> loadedClass) {
+        if (loadedClass.isArray() || loadedClass.isPrimitive()) {
+            return "Not a class";
+        }
+        
+        if (loadedClass.getName().contains("$$Lambda")) {
+            return "Generated at runtime";
+        }
+        
+        ClassLoader classLoader = loadedClass.getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+        
+        for (ClassLoader builtinClassLoader = ClassLoader.getSystemClassLoader(); builtinClassLoader != null; builtinClassLoader = builtinClassLoader.getParent()) {
+            if (classLoader == builtinClassLoader) {
+                return null;
+            }
+        }
+        
+        if (classLoader.getClass().getName().equals(TRANSFORMING_CLASS_LOADER)) {
+            return "Transformed at runtime";
+        }
+        
+        return "Defined by a custom ClassLoader";
+    }
+    
+    private static String getClassLoaderName(ClassLoader classLoader) {
+        return classLoader != null ? classLoader.getClass().getName() : "bootstrap";
+    }
+    
+    private static Set<String> getClassPath() {
+        Set<String> classPath = new HashSet<>();
+        for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                classPath.add(Paths.get(path).toAbsolutePath().normalize().toString());
+            }
+        }
+        
+        return classPath;
+    }
+    
+    private static Class<?> findLoadedClass(MethodHandle findLoadedClass, ClassLoader classLoader, String className) {
+        try {
+            return (Class<?>) findLoadedClass.invokeExact(classLoader, className);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * {@link ClassLoader#findLoadedClass(String)}, returns {@code null} when it cannot be made accessible.
+     * <p>
+     * {@code java.lang} is not opened on Java 16+, the handle is then resolved through the trusted Lookup which is
+     * obtained the same way as {@code ClassLoaderUtils} appends to the class path.
+     */
+    private static MethodHandle getFindLoadedClass() {
+        try {
+            Method method = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.debug("Unable to access ClassLoader#findLoadedClass, trying the trusted Lookup", ex);
+        }
+        
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Object unsafe = unsafeField.get(null);
+            Field lookupField = MethodHandles.Lookup.class.getDeclaredField("IMPL_LOOKUP");
+            Object base = unsafeClass.getMethod("staticFieldBase", Field.class).invoke(unsafe, lookupField);
+            long offset = (long) unsafeClass.getMethod("staticFieldOffset", Field.class).invoke(unsafe, lookupField);
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) unsafeClass.getMethod("getObject", Object.class, long.class).invoke(unsafe, base, offset);
+            return lookup.findVirtual(ClassLoader.class, "findLoadedClass", MethodType.methodType(Class.class, String.class));
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.debug("Unable to access the trusted Lookup", ex);
+            return null;
+        }
+    }
+    
+    private static Path getPath() {
+        String property = System.getProperty(PROPERTY);
+        if (property == null || property.isEmpty() || property.equalsIgnoreCase("false")) {
+            return null;
+        }
+        
+        if (property.equalsIgnoreCase("true")) {
+            return Paths.get(DEFAULT_FILE).toAbsolutePath();
+        }
+        
+        return Paths.get(property).toAbsolutePath();
+    }
+    
+    private static class Library {
+        
+        private final ClassLoader classLoader;
+        private final Path path;
+        private final List<String> classNames;
+        
+        private Library(ClassLoader classLoader, Path path, List<String> classNames) {
+            this.classLoader = classLoader;
+            this.path = path;
+            this.classNames = classNames;
+        }
+    }
+    
+    private static class Record {
+        
+        private final String name;
+        private final String classLoader;
+        private final boolean archivable;
+        private final String reason;
+        
+        private Record(String name, String classLoader, boolean archivable, String reason) {
+            this.name = name;
+            this.classLoader = classLoader;
+            this.archivable = archivable;
+            this.reason = reason;
+        }
+    }
+}
\ No newline at end of file
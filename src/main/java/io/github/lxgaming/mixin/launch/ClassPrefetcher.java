@@ -0,0 +1,375 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Records the order classes are loaded in and reads them ahead of time on the next launch,
+ * enabled with {@code -Dmixinbootstrap.prefetch=true}.
+ * <p>
+ * The trace is written to {@code <gamedir>/.mixinbootstrap/classes.trace} once the launch has begun and no class has
+ * been recorded for {@link #IDLE_TIME}, and again after each later burst of class loading, while the
+ * {@code TransformingClassLoader} is still in use rather than during shutdown. On the next launch the class
+ * files are read from their jars in the recorded order by a few threads, so the reads hit the page cache by the time
+ * the launcher thread needs them. Classes which were loaded by the {@link MixinClassLoader} fallback are not
+ * transformed and are also defined ahead of time once the fallback is installed.
+ */
+public class ClassPrefetcher {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".prefetch";
+    public static final String THREADS_PROPERTY = MixinBootstrap.ID + ".prefetch.threads";
+    private static final String TRANSFORMED = "transformed";
+    private static final String FALLBACK = "fallback";
+    private static final int MAXIMUM_CLASSES = 65536;
+    private static final long IDLE_TIME = TimeUnit.SECONDS.toMillis(10L);
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1L);
+    private static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+    private static final Set<String> CLASSES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final Queue<Record> RECORDS = new ConcurrentLinkedQueue<>();
+    private static final ArrayList<Record> TRACE = new ArrayList<>();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static volatile Path path;
+    private static volatile ClassLoader transformingClassLoader;
+    private static Thread saveThread;
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    /**
+     * Loads the trace from the previous launch and starts reading the recorded classes.
+     */
+    public static synchronized void start(IEnvironment environment) {
+        if (!ENABLED || path != null) {
+            return;
+        }
+        
+        Path gamePath = environment.getProperty(IEnvironment.Keys.GAMEDIR.get()).orElseGet(() -> Paths.get("."));
+        path = gamePath.resolve("." + MixinBootstrap.ID).resolve("classes.trace").toAbsolutePath().normalize();
+        LaunchTrimmer.register("prefetch", ClassPrefetcher::trim);
+        
+        if (Files.isRegularFile(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Record record = Record.parse(line);
+                    if (record != null) {
+                        TRACE.add(record);
+                    }
+                }
+            } catch (Exception ex) {
+                MixinBootstrap.LOGGER.warn("Encountered an error while reading {}", path, ex);
+                TRACE.clear();
+            }
+        }
+        
+        if (TRACE.isEmpty()) {
+            return;
+        }
+        
+        List<Record> records = new ArrayList<>(TRACE);
+        Map<Path, ZipIndex> zipIndexes = new ConcurrentHashMap<>();
+        run("Read", records, record -> read(record, zipIndexes), () -> {
+            zipIndexes.clear();
+            MixinBootstrap.LOGGER.debug("Prefetched {} classes ({} bytes)", records.size(), BYTES_READ.sum());
+        });
+    }
+    
+    /**
+     * Defines the classes which were loaded through the fallback during the previous launch.
+     */
+    public static synchronized void define(ClassLoader classLoader) {
+        if (!ENABLED) {
+            return;
+        }
+        
+        List<Record> records = new ArrayList<>();
+        for (Record record : TRACE) {
+            if (record.kind.equals(FALLBACK)) {
+                records.add(record);
+            }
+        }
+        
+        run("Define", records, record -> {
+            try {
+                Class.forName(record.name, false, classLoader);
+            } catch (Throwable ex) {
+                // The launcher thread will report this if the class is actually required
+            }
+        }, () -> MixinBootstrap.LOGGER.debug("Defined {} classes", records.size()));
+    }
+    
+    /**
+     * Releases the trace of the previous launch, the recording for the next launch is kept.
+     */
+    public static synchronized void trim() {
+        TRACE.clear();
+        TRACE.trimToSize();
+    }
+    
+    /**
+     * Called once the launch begins, starts saving the trace whenever class loading goes idle.
+     */
+    public static synchronized void setTransformingClassLoader(ClassLoader classLoader) {
+        transformingClassLoader = classLoader;
+        if (!ENABLED || saveThread != null) {
+            return;
+        }
+        
+        saveThread = new Thread(() -> {
+            try {
+                saveWhenIdle();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, MixinBootstrap.NAME + " Class Trace");
+        saveThread.setDaemon(true);
+        saveThread.start();
+    }
+    
+    public static void record(Class<?> loadedClass) {
+        if (ENABLED && CLASSES.size() < MAXIMUM_CLASSES && CLASSES.add(loadedClass.getName())) {
+            CodeSource codeSource = loadedClass.getProtectionDomain().getCodeSource();
+            RECORDS.add(new Record(FALLBACK, loadedClass.getName(), codeSource != null ? codeSource.getLocation() : null));
+        }
+    }
+    
+    public static void recordTransformed(String className) {
+        if (ENABLED && CLASSES.size() < MAXIMUM_CLASSES && CLASSES.add(className)) {
+            RECORDS.add(new Record(TRANSFORMED, className, null));
+        }
+    }
+    
+    public static synchronized void save() {
+        Path tracePath = path;
+        if (!ENABLED || tracePath == null || RECORDS.isEmpty()) {
+            return;
+        }
+        
+        ClassLoader classLoader = transformingClassLoader;
+        try {
+            Files.createDirectories(tracePath.getParent());
+            Path temporaryPath = Files.createTempFile(tracePath.getParent(), "classes-", ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+                    for (Record record : RECORDS) {
+                        String resourceName = record.name.replace('.', '/') + ".class";
+                        Location location = null;
+                        if (record.url != null) {
+                            location = Location.of(record.url, resourceName);
+                        } else if (classLoader != null) {
+                            URL url = classLoader.getResource(resourceName);
+                            location = url != null ? Location.of(url, resourceName) : null;
+                        }
+                        
+                        writer.write(record.kind + "\t" + record.name + "\t" + (location != null ? location.path + "\t" + location.entry : "\t"));
+                        writer.newLine();
+                    }
+                }
+                
+                try {
+                    Files.move(temporaryPath, tracePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporaryPath, tracePath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.error("Encountered an error while writing {}", tracePath, ex);
+        }
+    }
+    
+    private static void saveWhenIdle() throws InterruptedException {
+        int savedClasses = 0;
+        int classes = CLASSES.size();
+        long idleSince = System.currentTimeMillis();
+        while (savedClasses < MAXIMUM_CLASSES) {
+            Thread.sleep(CHECK_INTERVAL);
+            int currentClasses = CLASSES.size();
+            if (currentClasses != classes) {
+                classes = currentClasses;
+                idleSince = System.currentTimeMillis();
+            } else if (classes != savedClasses && System.currentTimeMillis() - idleSince >= IDLE_TIME) {
+                save();
+                savedClasses = classes;
+            }
+        }
+    }
+    
+    private static void read(Record record, Map<Path, ZipIndex> zipIndexes) {
+        if (record.path == null) {
+            return;
+        }
+        
+        try {
+            if (record.entry.isEmpty()) {
+                BYTES_READ.add(Files.readAllBytes(record.path).length);
+                return;
+            }
+            
+            ZipIndex zipIndex = zipIndexes.computeIfAbsent(record.path, key -> {
+                try {
+                    return ZipIndex.map(key);
+                } catch (IOException ex) {
+                    return null;
+                }
+            });
+            
+            ZipIndex.Entry entry = zipIndex != null ? zipIndex.getEntry(record.entry) : null;
+            if (entry != null) {
+                BYTES_READ.add(zipIndex.getBytes(entry).length);
+            }
+        } catch (Exception ex) {
+            // Stale trace, the class will be read as usual
+        }
+    }
+    
+    /**
+     * Processes the records in order on {@link #THREADS_PROPERTY} daemon threads, the callback runs once all
+     * records have been processed.
+     */
+    private static void run(String name, List<Record> records, Consumer<Record> consumer, Runnable callback) {
+        if (records.isEmpty()) {
+            return;
+        }
+        
+        int threads = Math.max(1, Math.min(records.size(), Integer.getInteger(THREADS_PROPERTY, Math.min(4, Runtime.getRuntime().availableProcessors()))));
+        AtomicInteger index = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            Thread prefetchThread = new Thread(() -> {
+                int current;
+                while ((current = index.getAndIncrement()) < records.size()) {
+                    consumer.accept(records.get(current));
+                }
+                
+                if (remaining.decrementAndGet() == 0) {
+                    callback.run();
+                }
+            }, MixinBootstrap.NAME + " Prefetch " + name + " #" + thread);
+            prefetchThread.setDaemon(true);
+            prefetchThread.start();
+        }
+    }
+    
+    private static class Location {
+        
+        private final String path;
+        private final String entry;
+        
+        private Location(String path, String entry) {
+            this.path = path;
+            this.entry = entry;
+        }
+        
+        /**
+         * Resolves {@code jar:}, {@code union:} (ModLauncher 9+) and {@code file:} URLs to the file on disk.
+         */
+        private static Location of(URL url, String resourceName) {
+            try {
+                String protocol = url.getProtocol();
+                if (protocol.equals("file")) {
+                    Path filePath = Paths.get(url.toURI());
+                    if (Files.isDirectory(filePath)) {
+                        return new Location(filePath.resolve(resourceName).toString(), "");
+                    }
+                    
+                    return new Location(filePath.toString(), filePath.toString().endsWith(".class") ? "" : resourceName);
+                }
+                
+                String value = url.toString();
+                if (protocol.equals("jar")) {
+                    int index = value.indexOf("!/");
+                    return new Location(Paths.get(new URI(value.substring(4, index != -1 ? index : value.length()))).toString(), resourceName);
+                }
+                
+                if (protocol.equals("union")) {
+                    // union:/path/to/mod.jar%23123!/a/b/C.class
+                    int index = value.indexOf("!/");
+                    String filePath = value.substring(6, index != -1 ? index : value.length());
+                    int suffixIndex = filePath.lastIndexOf("%23");
+                    if (suffixIndex != -1) {
+                        filePath = filePath.substring(0, suffixIndex);
+                    }
+                    
+                    return new Location(Paths.get(URI.create("file:" + filePath)).toString(), resourceName);
+                }
+            } catch (Exception ex) {
+                // no-op
+            }
+            
+            return null;
+        }
+    }
+    
+    private static class Record {
+        
+        private final String kind;
+        private final String name;
+        private final URL url;
+        private final Path path;
+        private final String entry;
+        
+        private Record(String kind, String name, URL url) {
+            this(kind, name, url, null, "");
+        }
+        
+        private Record(String kind, String name, URL url, Path path, String entry) {
+            this.kind = kind;
+            this.name = name;
+            this.url = url;
+            this.path = path;
+            this.entry = entry;
+        }
+        
+        private static Record parse(String line) {
+            String[] values = line.split("\t", -1);
+            if (values.length != 4) {
+                return null;
+            }
+            
+            return new Record(values[0], values[1], null, values[2].isEmpty() ? null : Paths.get(values[2]), values[3]);
+        }
+    }
+}
\ No newline at end of file
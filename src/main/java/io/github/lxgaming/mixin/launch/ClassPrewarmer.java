@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.spongepowered.asm.mixin.transformer.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the bytecode of every mixin target ahead of time, enabled with {@code -Dmixinbootstrap.prewarm=true}.
+ * <p>
+ * Once Mixin has selected all configs in the default phase the class file of every target is read through the
+ * {@code TransformingClassLoader} on a {@link ForkJoinPool}, so locating and inflating it is off the launcher thread
+ * by the time the class is loaded. Targets which cannot be found are reported together as soon as the pool finishes.
+ * <p>
+ * No class is loaded or defined here. Mixin applies under a global lock and config plugins load classes while it is
+ * held, so loading targets from other threads can deadlock against the class loading locks of the launcher thread.
+ * Mixin's {@code ClassInfo} cache is not thread-safe and is left to the launcher thread as well. This is experimental.
+ */
+public class ClassPrewarmer {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".prewarm";
+    public static final String THREADS_PROPERTY = MixinBootstrap.ID + ".prewarm.threads";
+    private static final long CHECK_INTERVAL = 100L;
+    private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(1L);
+    private static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+    private static volatile ClassLoader transformingClassLoader;
+    private static Thread thread;
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    /**
+     * Waits for the launch to begin and Mixin to select its configs on a background thread.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || thread != null) {
+            return;
+        }
+        
+        thread = new Thread(ClassPrewarmer::run, MixinBootstrap.NAME + " Prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public static void setTransformingClassLoader(ClassLoader classLoader) {
+        transformingClassLoader = classLoader;
+    }
+    
+    private static void run() {
+        try {
+            long deadline = System.nanoTime() + TIMEOUT;
+            List<String> targets;
+            while ((targets = getTargets()) == null) {
+                if (System.nanoTime() - deadline > 0) {
+                    MixinBootstrap.LOGGER.warn("Mixin did not select its configs within {} seconds, skipping prewarm", TimeUnit.NANOSECONDS.toSeconds(TIMEOUT));
+                    return;
+                }
+                
+                Thread.sleep(CHECK_INTERVAL);
+            }
+            
+            prewarm(transformingClassLoader, targets);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable ex) {
+            MixinBootstrap.LOGGER.error("Encountered an error while prewarming", ex);
+        }
+    }
+    
+    /**
+     * Returns {@code null} until the launch has begun and every config has been selected.
+     */
+    private static List<String> getTargets() {
+        if (transformingClassLoader == null || !MixinConfigs.isSelected()) {
+            return null;
+        }
+        
+        List<Config> configs = MixinConfigs.getConfigs();
+        return configs != null ? new ArrayList<>(MixinConfigs.getTargets(configs)) : null;
+    }
+    
+    static void prewarm(ClassLoader classLoader, List<String> targets) {
+        long start = System.nanoTime();
+        int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() - 1));
+        Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+        Set<String> missing = new ConcurrentSkipListSet<>();
+        LongAdder bytesRead = new LongAdder();
+        
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread workerThread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            workerThread.setName(MixinBootstrap.NAME + " Prewarm-" + workerThread.getPoolIndex());
+            return workerThread;
+        }, null, false);
+        
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(targets.size());
+            for (String target : targets) {
+                tasks.add(forkJoinPool.submit(() -> {
+                    try (InputStream inputStream = classLoader.getResourceAsStream(target.replace('.', '/') + ".class")) {
+                        if (inputStream == null) {
+                            // Targets of optional integrations
+                            missing.add(target);
+                            return;
+                        }
+                        
+                        bytesRead.add(read(inputStream));
+                    } catch (Throwable ex) {
+                        failures.put(target, ex);
+                    }
+                }));
+            }
+            
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        
+        long time = System.nanoTime() - start;
+        Metrics.Group metrics = Metrics.group("prewarm");
+        metrics.counter("targets").add(targets.size());
+        metrics.counter("missing").add(missing.size());
+        metrics.counter("failed").add(failures.size());
+        metrics.counter("bytes").add(bytesRead.sum());
+        metrics.counter("nanos").add(time);
+        
+        MixinBootstrap.LOGGER.info("Prewarmed {} mixin targets ({} KB) on {} threads in {} ms ({} missing, {} failed)",
+                targets.size() - missing.size() - failures.size(), bytesRead.sum() / 1024L, threads, TimeUnit.NANOSECONDS.toMillis(time), missing.size(), failures.size());
+        if (!missing.isEmpty()) {
+            MixinBootstrap.LOGGER.debug("Missing mixin targets: {}", missing);
+        }
+        
+        if (failures.isEmpty()) {
+            return;
+        }
+        
+        MixinBootstrap.LOGGER.warn("Failed to read {} mixin targets", failures.size());
+        for (Map.Entry<String, Throwable> entry : failures.entrySet()) {
+            MixinBootstrap.LOGGER.warn("Failed to prewarm {}", entry.getKey(), entry.getValue());
+        }
+    }
+    
+    private static long read(InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[8192];
+        long total = 0L;
+        int length;
+        while ((length = inputStream.read(bytes)) != -1) {
+            total += length;
+        }
+        
+        return total;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Base for the wrappers around an {@link ILaunchPluginService}, every call is passed to the wrapped plugin unless it
+ * is overridden.
+ */
+public abstract class DelegatingLaunchPluginService implements ILaunchPluginService {
+    
+    // ILaunchPluginService.processClassWithFlags, only present on ModLauncher 7+
+    private static final MethodHandle PROCESS_CLASS_WITH_FLAGS = getProcessClassWithFlags();
+    
+    protected final ILaunchPluginService launchPluginService;
+    
+    protected DelegatingLaunchPluginService(ILaunchPluginService launchPluginService) {
+        this.launchPluginService = launchPluginService;
+    }
+    
+    @Override
+    public String name() {
+        return launchPluginService.name();
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+        return launchPluginService.handlesClass(classType, isEmpty);
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty, String reason) {
+        return launchPluginService.handlesClass(classType, isEmpty, reason);
+    }
+    
+    @Override
+    public boolean processClass(Phase phase, ClassNode classNode, Type classType) {
+        return launchPluginService.processClass(phase, classNode, classType);
+    }
+    
+    @Override
+    public boolean processClass(Phase phase, ClassNode classNode, Type classType, String reason) {
+        return launchPluginService.processClass(phase, classNode, classType, reason);
+    }
+    
+    /**
+     * Overrides {@code ILaunchPluginService#processClassWithFlags} which is only present on ModLauncher 7+,
+     * subclasses override {@link #delegateProcessClassWithFlags} instead.
+     */
+    public final int processClassWithFlags(Phase phase, ClassNode classNode, Type classType, String reason) {
+        if (PROCESS_CLASS_WITH_FLAGS == null) {
+            return processClass(phase, classNode, classType, reason) ? ClassWriter.COMPUTE_FRAMES : 0;
+        }
+        
+        return delegateProcessClassWithFlags(phase, classNode, classType, reason);
+    }
+    
+    /**
+     * Passes {@code processClassWithFlags} to the wrapped plugin, only called on ModLauncher 7+.
+     */
+    protected int delegateProcessClassWithFlags(Phase phase, ClassNode classNode, Type classType, String reason) {
+        try {
+            return (int) PROCESS_CLASS_WITH_FLAGS.invoke(launchPluginService, phase, classNode, classType, reason);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    @Override
+    public void offerResource(Path resource, String name) {
+        launchPluginService.offerResource(resource, name);
+    }
+    
+    @Override
+    public void addResources(List<Map.Entry<String, Path>> resources) {
+        launchPluginService.addResources(resources);
+    }
+    
+    @Override
+    public void initializeLaunch(ITransformerLoader transformerLoader, Path[] specialPaths) {
+        launchPluginService.initializeLaunch(transformerLoader, specialPaths);
+    }
+    
+    @Override
+    public <T> T getExtension() {
+        return launchPluginService.getExtension();
+    }
+    
+    @Override
+    public Consumer<String[]> customAuditConsumer(String className, Consumer<String[]> auditDataAcceptor) {
+        return launchPluginService.customAuditConsumer(className, auditDataAcceptor);
+    }
+    
+    public ILaunchPluginService getLaunchPluginService() {
+        return launchPluginService;
+    }
+    
+    private static MethodHandle getProcessClassWithFlags() {
+        try {
+            MethodType methodType = MethodType.methodType(int.class, Phase.class, ClassNode.class, Type.class, String.class);
+            return MethodHandles.publicLookup().findVirtual(ILaunchPluginService.class, "processClassWithFlags", methodType);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+}
\ No newline at end of file
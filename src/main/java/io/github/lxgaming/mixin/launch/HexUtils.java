@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+public class HexUtils {
+    
+    /**
+     * Lowercase hexadecimal, used for the digests in file names.
+     */
+    public static String toHexString(byte[] bytes) {
+        StringBuilder stringBuilder = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            stringBuilder.append(Character.forDigit((value >> 4) & 0xF, 16));
+            stringBuilder.append(Character.forDigit(value & 0xF, 16));
+        }
+        
+        return stringBuilder.toString();
+    }
+}
\ No newline at end of file
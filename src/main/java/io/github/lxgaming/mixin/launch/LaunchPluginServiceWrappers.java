@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts the delegated launch plugins into the plugins of ModLauncher and swaps in their wrappers later.
+ * <p>
+ * Mixin looks up its launch plugin by name while its transformation service is initialized and fails the launch
+ * unless it gets back its own instance. The plugins are therefore registered unwrapped, and {@link #install()}
+ * replaces them with their wrappers once the delegated services have been initialized. ModLauncher has not
+ * transformed any class at that point.
+ */
+public class LaunchPluginServiceWrappers {
+    
+    private final Map<String, ILaunchPluginService> launchPluginServices;
+    private final Map<String, ILaunchPluginService> wrappers;
+    
+    public LaunchPluginServiceWrappers(Map<String, ILaunchPluginService> launchPluginServices) {
+        this.launchPluginServices = launchPluginServices;
+        this.wrappers = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Registers the plugin itself, its wrappers are held back until {@link #install()}.
+     */
+    public void register(ILaunchPluginService launchPluginService) {
+        ILaunchPluginService wrappedLaunchPluginService = TransformationProfiler.wrap(launchPluginService);
+        wrappedLaunchPluginService = PrefilterLaunchPluginService.wrap(wrappedLaunchPluginService);
+        
+        launchPluginServices.put(launchPluginService.name(), launchPluginService);
+        if (wrappedLaunchPluginService != launchPluginService) {
+            wrappers.put(launchPluginService.name(), wrappedLaunchPluginService);
+        }
+    }
+    
+    /**
+     * Replaces the registered plugins with their wrappers. A plugin which has been replaced by something else is left
+     * alone.
+     */
+    public void install() {
+        for (Map.Entry<String, ILaunchPluginService> entry : wrappers.entrySet()) {
+            ILaunchPluginService wrappedLaunchPluginService = entry.getValue();
+            if (launchPluginServices.replace(entry.getKey(), unwrap(wrappedLaunchPluginService), wrappedLaunchPluginService)) {
+                MixinBootstrap.LOGGER.debug("Installed wrappers for {}", entry.getKey());
+            } else {
+                MixinBootstrap.LOGGER.warn("{} has been replaced, its wrappers are not installed", entry.getKey());
+            }
+        }
+        
+        wrappers.clear();
+    }
+    
+    private static ILaunchPluginService unwrap(ILaunchPluginService launchPluginService) {
+        while (launchPluginService instanceof DelegatingLaunchPluginService) {
+            launchPluginService = ((DelegatingLaunchPluginService) launchPluginService).getLaunchPluginService();
+        }
+        
+        return launchPluginService;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records how long each launch phase takes, enabled with {@code -Dmixinbootstrap.profiler=<file>}.
+ * <p>
+ * The report is rewritten after each top-level phase so it is complete once the last phase has run.
+ * The cumulative time of each phase is always available from the {@code lifecycle} {@link Metrics} group, the
+ * property only controls whether the individual phases are recorded and written to the report.
+ */
+public class LaunchProfiler {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".profiler";
+    private static final String DEFAULT_FILE = MixinBootstrap.ID + "-profile.csv";
+    private static final Path PATH = getPath();
+    private static final boolean ENABLED = PATH != null;
+    private static final long ORIGIN = System.nanoTime();
+    private static final Queue<Record> RECORDS = new ConcurrentLinkedQueue<>();
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static long start() {
+        return System.nanoTime();
+    }
+    
+    public static void stop(String phase, String name, long start) {
+        long duration = System.nanoTime() - start;
+        Metrics.group("lifecycle").counter(phase + "." + name + ".nanos").add(duration);
+        if (ENABLED) {
+            RECORDS.add(new Record(phase, name, start - ORIGIN, duration));
+        }
+    }
+    
+    public static synchronized void report() {
+        if (!ENABLED) {
+            return;
+        }
+        
+        List<Record> records = new ArrayList<>(RECORDS);
+        try (BufferedWriter writer = Files.newBufferedWriter(PATH, StandardCharsets.UTF_8)) {
+            writer.write("phase,name,start_ms,duration_ms");
+            writer.newLine();
+            for (Record record : records) {
+                writer.write(String.format(Locale.ROOT, "%s,%s,%.3f,%.3f", record.phase, record.name, record.start / 1_000_000D, record.duration / 1_000_000D));
+                writer.newLine();
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.error("Encountered an error while writing {}", PATH, ex);
+        }
+    }
+    
+    private static Path getPath() {
+        String property = System.getProperty(PROPERTY);
+        if (property == null || property.isEmpty() || property.equalsIgnoreCase("false")) {
+            return null;
+        }
+        
+        if (property.equalsIgnoreCase("true")) {
+            return Paths.get(DEFAULT_FILE).toAbsolutePath();
+        }
+        
+        return Paths.get(property).toAbsolutePath();
+    }
+    
+    private static class Record {
+        
+        private final String phase;
+        private final String name;
+        private final long start;
+        private final long duration;
+        
+        private Record(String phase, String name, long start, long duration) {
+            this.phase = phase;
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Releases state which is only needed during launch, enabled with {@code -Dmixinbootstrap.trim=<seconds>}.
+ * <p>
+ * ModLauncher is not told when the game has finished loading, so this is taken to be the point where the
+ * {@code TransformingClassLoader} has not defined a class for the given number of seconds, {@code true} uses
+ * {@link #DEFAULT_IDLE_TIME}. The trim then runs on a background thread. The reclaimed heap is only measured when
+ * debug logging is enabled, as it forces a collection before and after the trim.
+ * <p>
+ * Mixin's {@code ClassInfo} cache is kept. Classes are still transformed after this point, and the cached entries of
+ * mixins and their targets hold the applied mixins which cannot be recreated from bytecode.
+ */
+public class LaunchTrimmer {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".trim";
+    private static final long DEFAULT_IDLE_TIME = TimeUnit.SECONDS.toMillis(10L);
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1L);
+    private static final long IDLE_TIME = getIdleTime();
+    private static final boolean ENABLED = IDLE_TIME > 0;
+    private static final Map<String, Runnable> TASKS = new ConcurrentHashMap<>();
+    private static final LongAdder CLASSES = new LongAdder();
+    private static volatile boolean scheduled;
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    /**
+     * Registers a task which releases launch state, registering the same name again replaces the task.
+     */
+    public static void register(String name, Runnable task) {
+        if (ENABLED) {
+            TASKS.put(name, task);
+        }
+    }
+    
+    /**
+     * Records a class defined by the {@code TransformingClassLoader}, which postpones the trim.
+     */
+    public static void recordClass() {
+        if (ENABLED) {
+            CLASSES.increment();
+        }
+    }
+    
+    /**
+     * Starts waiting for the game to finish loading, called once the launch begins.
+     */
+    public static synchronized void schedule() {
+        if (!ENABLED || scheduled) {
+            return;
+        }
+        
+        scheduled = true;
+        Thread thread = new Thread(() -> {
+            try {
+                awaitIdle();
+                trim();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, MixinBootstrap.NAME + " Trim");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public static void trim() {
+        boolean measure = MixinBootstrap.LOGGER.isDebugEnabled();
+        long usedBefore = measure ? getUsedHeap() : 0L;
+        long start = System.nanoTime();
+        int tasks = 0;
+        for (Map.Entry<String, Runnable> entry : TASKS.entrySet()) {
+            try {
+                entry.getValue().run();
+                tasks++;
+                MixinBootstrap.LOGGER.debug("Trimmed {}", entry.getKey());
+            } catch (Exception ex) {
+                MixinBootstrap.LOGGER.warn("Encountered an error while trimming {}", entry.getKey(), ex);
+            }
+        }
+        
+        TASKS.clear();
+        MixinBootstrap.LOGGER.info("Trimmed {} launch states in {} ms", tasks, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (measure) {
+            long usedAfter = getUsedHeap();
+            MixinBootstrap.LOGGER.debug("Reclaimed {} KB of heap ({} KB -> {} KB)", Math.max(0L, usedBefore - usedAfter) / 1024L, usedBefore / 1024L, usedAfter / 1024L);
+        }
+    }
+    
+    /**
+     * Heap in use after a full collection, this is the only way to attribute the reclaimed memory to the trim.
+     */
+    private static long getUsedHeap() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        memoryMXBean.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+    
+    private static void awaitIdle() throws InterruptedException {
+        long classes = CLASSES.sum();
+        long idleSince = System.currentTimeMillis();
+        while (System.currentTimeMillis() - idleSince < IDLE_TIME) {
+            Thread.sleep(CHECK_INTERVAL);
+            long currentClasses = CLASSES.sum();
+            if (currentClasses != classes) {
+                classes = currentClasses;
+                idleSince = System.currentTimeMillis();
+            }
+        }
+    }
+    
+    private static long getIdleTime() {
+        String property = System.getProperty(PROPERTY);
+        if (property == null || property.isEmpty() || property.equalsIgnoreCase("false")) {
+            return -1L;
+        }
+        
+        if (property.equalsIgnoreCase("true")) {
+            return DEFAULT_IDLE_TIME;
+        }
+        
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(1L, Long.parseLong(property)));
+        } catch (NumberFormatException ex) {
+            MixinBootstrap.LOGGER.warn("Invalid {}: {}", PROPERTY, property);
+            return -1L;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.LaunchPluginHandler;
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.IncompatibleEnvironmentException;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ModLauncher and Forge internals resolved once into {@link MethodHandle}s for the running ModLauncher version.
+ * <p>
+ * Fields are made accessible a single time when this class is initialized, the handles are held in static final
+ * fields so the JIT can treat them as constants. The accessors required by the running version are selected by its
+ * specification version, those which could not be resolved are reported together by {@link #validate()} instead of
+ * failing one by one during the launch. Forge internals are optional.
+ */
+public class LauncherAccessors {
+    
+    private static final String MODULE_CLASS_LOADER_CLASS = "cpw.mods.cl.ModuleClassLoader";
+    private static final String MOD_DIR_TRANSFORMER_DISCOVERER_CLASS = "net.minecraftforge.fml.loading.ModDirTransformerDiscoverer";
+    private static final String VERSION = IEnvironment.class.getPackage().getSpecificationVersion();
+    private static final boolean MODULAR = IEnvironment.class.getPackage().isCompatibleWith("8.0");
+    private static final Map<String, Throwable> FAILURES = new LinkedHashMap<>();
+    
+    // cpw.mods.modlauncher.Launcher.launchPlugins
+    private static final MethodHandle LAUNCH_PLUGINS = resolve("Launcher.launchPlugins", () -> getter(Launcher.class, "launchPlugins"));
+    
+    // cpw.mods.modlauncher.LaunchPluginHandler.plugins
+    private static final MethodHandle PLUGINS = resolve("LaunchPluginHandler.plugins", () -> getter(LaunchPluginHandler.class, "plugins"));
+    
+    // java.lang.ClassLoader.getPlatformClassLoader, caller sensitive so the public Lookup cannot be used
+    private static final MethodHandle PLATFORM_CLASS_LOADER = MODULAR ? resolve("ClassLoader.getPlatformClassLoader", () -> {
+        return MethodHandles.lookup().findStatic(ClassLoader.class, "getPlatformClassLoader", MethodType.methodType(ClassLoader.class));
+    }) : null;
+    
+    // cpw.mods.cl.ModuleClassLoader.setFallbackClassLoader
+    private static final MethodHandle SET_FALLBACK_CLASS_LOADER = MODULAR ? resolve("ModuleClassLoader.setFallbackClassLoader", () -> {
+        Class<?> moduleClassLoaderClass = Class.forName(MODULE_CLASS_LOADER_CLASS);
+        return MethodHandles.publicLookup().findVirtual(moduleClassLoaderClass, "setFallbackClassLoader", MethodType.methodType(void.class, ClassLoader.class));
+    }) : null;
+    
+    // net.minecraftforge.fml.loading.ModDirTransformerDiscoverer.transformers
+    private static final MethodHandle TRANSFORMERS = resolveOptional("ModDirTransformerDiscoverer.transformers", () -> {
+        return getter(Class.forName(MOD_DIR_TRANSFORMER_DISCOVERER_CLASS, false, Launcher.class.getClassLoader()), "transformers");
+    });
+    
+    // Public no-arg constructors of the delegated services, the Lookup of this module is required as ModLauncher 8+
+    // does not export the packages of the services unconditionally
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.lookup().findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("Failed to resolve constructor for " + type.getName(), ex);
+            }
+        }
+    };
+    
+    static {
+        MixinBootstrap.LOGGER.debug("Resolved launcher accessors for ModLauncher {} with {} failures", VERSION, FAILURES.size());
+    }
+    
+    /**
+     * Reports every accessor required by the running ModLauncher version which could not be resolved.
+     */
+    public static void validate() throws IncompatibleEnvironmentException {
+        if (FAILURES.isEmpty()) {
+            return;
+        }
+        
+        for (Map.Entry<String, Throwable> entry : FAILURES.entrySet()) {
+            MixinBootstrap.LOGGER.error("Failed to resolve {} for ModLauncher {}", entry.getKey(), VERSION, entry.getValue());
+        }
+        
+        throw new IncompatibleEnvironmentException("Incompatible with ModLauncher " + VERSION);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static Map<String, ILaunchPluginService> getLaunchPluginServices(Launcher launcher) throws Throwable {
+        LaunchPluginHandler launchPluginHandler = (LaunchPluginHandler) require(LAUNCH_PLUGINS).invokeExact(launcher);
+        return (Map<String, ILaunchPluginService>) require(PLUGINS).invokeExact(launchPluginHandler);
+    }
+    
+    public static ClassLoader getPlatformClassLoader() throws Throwable {
+        return (ClassLoader) require(PLATFORM_CLASS_LOADER).invokeExact();
+    }
+    
+    /**
+     * Returns {@code true} if the ClassLoader is the ModLauncher 8+ {@code ModuleClassLoader}.
+     */
+    public static boolean isModuleClassLoader(ClassLoader classLoader) {
+        return SET_FALLBACK_CLASS_LOADER != null && SET_FALLBACK_CLASS_LOADER.type().parameterType(0).isInstance(classLoader);
+    }
+    
+    public static void setFallbackClassLoader(ClassLoader moduleClassLoader, ClassLoader fallbackClassLoader) throws Throwable {
+        require(SET_FALLBACK_CLASS_LOADER).invoke(moduleClassLoader, fallbackClassLoader);
+    }
+    
+    /**
+     * Returns {@code null} when Forge is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Path> getTransformers() throws Throwable {
+        return TRANSFORMERS != null ? (List<Path>) TRANSFORMERS.invoke() : null;
+    }
+    
+    /**
+     * Replaces {@link Class#newInstance()}, the constructor must be public.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(Class<T> type) throws Throwable {
+        return (T) CONSTRUCTORS.get(type).invokeExact();
+    }
+    
+    private static MethodHandle getter(Class<?> owner, String name) throws ReflectiveOperationException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return MethodHandles.lookup().unreflectGetter(field);
+    }
+    
+    private static MethodHandle require(MethodHandle methodHandle) {
+        if (methodHandle == null) {
+            throw new IllegalStateException("Accessor is unavailable for ModLauncher " + VERSION);
+        }
+        
+        return methodHandle;
+    }
+    
+    private static MethodHandle resolve(String name, Resolver resolver) {
+        try {
+            return resolver.resolve();
+        } catch (Throwable ex) {
+            FAILURES.put(name, ex);
+            return null;
+        }
+    }
+    
+    private static MethodHandle resolveOptional(String name, Resolver resolver) {
+        try {
+            return resolver.resolve();
+        } catch (Throwable ex) {
+            MixinBootstrap.LOGGER.debug("{} is unavailable", name);
+            return null;
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Resolver {
+        
+        MethodHandle resolve() throws Throwable;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content addressed store for the libraries nested under {@code META-INF/libraries}.
+ * <p>
+ * Each library is stored as {@code <name>-<sha256>.jar}, so a warm start only has to hash the nested entry and
+ * check the size of the stored copy.
+ * Entries are published with an atomic move which allows several JVMs to share the same directory. Lookups hold a
+ * shared lock on the directory so another instance cannot clean up an entry between it being checked and touched.
+ */
+public class LibraryCache {
+    
+    public static final String DIRECTORY_PROPERTY = MixinBootstrap.ID + ".libraries.cache";
+    private static final String LOCK_FILE = ".lock";
+    private static final long STALE_TIME = TimeUnit.DAYS.toMillis(7);
+    
+    private final Path directory;
+    private final Set<Path> paths;
+    private long bytesCopied;
+    
+    public LibraryCache(Path directory) {
+        this.directory = directory;
+        this.paths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    }
+    
+    public Path getPath(Path path) throws IOException {
+        return getPath(path.getFileName().toString(), Files.readAllBytes(path));
+    }
+    
+    public synchronized Path getPath(String fileName, byte[] bytes) throws IOException {
+        int index = fileName.lastIndexOf('.');
+        String name = index != -1 ? fileName.substring(0, index) : fileName;
+        Path cachedPath = directory.resolve(name + "-" + HexUtils.toHexString(digest(bytes)) + ".jar");
+        paths.add(cachedPath);
+        
+        try (FileChannel fileChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Released when the channel is closed
+            fileChannel.lock(0L, Long.MAX_VALUE, true);
+            return getPath(fileName, name, cachedPath, bytes);
+        }
+    }
+    
+    private Path getPath(String fileName, String name, Path cachedPath, byte[] bytes) throws IOException {
+        if (Files.isRegularFile(cachedPath)) {
+            if (Files.size(cachedPath) == bytes.length) {
+                touch(cachedPath);
+                MixinBootstrap.LOGGER.debug("Reusing {}", cachedPath);
+                return cachedPath;
+            }
+            
+            MixinBootstrap.LOGGER.warn("Replacing corrupt {}", cachedPath);
+            Files.deleteIfExists(cachedPath);
+        }
+        
+        Path temporaryPath = Files.createTempFile(directory, name + "-", ".tmp");
+        try {
+            MixinBootstrap.LOGGER.debug("Copying {} -> {}", fileName, cachedPath);
+            Files.write(temporaryPath, bytes);
+            bytesCopied += bytes.length;
+            
+            try {
+                Files.move(temporaryPath, cachedPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporaryPath, cachedPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileAlreadyExistsException ex) {
+                // Another instance published the same content first
+                MixinBootstrap.LOGGER.debug("{} already exists", cachedPath);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+        
+        return cachedPath;
+    }
+    
+    /**
+     * Removes entries which have not been used by any instance for {@link #STALE_TIME}.
+     * This is skipped if another instance is currently using or cleaning the directory.
+     */
+    public synchronized void cleanup() {
+        try (FileChannel fileChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock fileLock = fileChannel.tryLock()) {
+            if (fileLock == null) {
+                return;
+            }
+            
+            long staleTime = System.currentTimeMillis() - STALE_TIME;
+            List<Path> stalePaths;
+            try (Stream<Path> stream = Files.list(directory)) {
+                stalePaths = stream
+                        .filter(path -> !paths.contains(path) && Files.isRegularFile(path))
+                        .filter(path -> {
+                            String fileName = path.getFileName().toString();
+                            return fileName.endsWith(".jar") || fileName.endsWith(".tmp");
+                        })
+                        .collect(Collectors.toList());
+            }
+            
+            for (Path path : stalePaths) {
+                if (Files.getLastModifiedTime(path).toMillis() < staleTime) {
+                    MixinBootstrap.LOGGER.debug("Deleting {}", path);
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.warn("Encountered an error while cleaning {}", directory, ex);
+        }
+    }
+    
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+    
+    /**
+     * Keeps the entry fresh for other instances sharing this directory, the directory may be read-only.
+     */
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException | SecurityException ex) {
+            MixinBootstrap.LOGGER.debug("Unable to update {}", path, ex);
+        }
+    }
+    
+    private static byte[] digest(byte[] bytes) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+}
\ No newline at end of file
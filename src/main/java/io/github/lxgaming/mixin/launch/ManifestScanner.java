@@ -0,0 +1,279 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the manifest of every jar in the mods directory in parallel, enabled with {@code -Dmixinbootstrap.scan=true}.
+ * <p>
+ * Only the central directory and {@code META-INF/MANIFEST.MF} of each jar are read with positional reads, the jars
+ * are not mapped so they are not left locked on Windows. The main attributes are cached in
+ * {@code <gamedir>/.mixinbootstrap/manifests.cache} by path, size and modification time so unchanged jars are not
+ * opened again. The results are handed to Mixin by seeding the cache behind {@code MainAttributes.of(URI)}, which
+ * Mixin consults for the {@code MixinConfigs} of every container.
+ * <p>
+ * Mixin keys that cache by the URI of the path ModLauncher offers for each mod, see {@link #getKey(Path)}. This is
+ * only a plain file path on ModLauncher 4.x - 7.x, ModLauncher 8+ offers paths inside its own file systems which
+ * cannot be derived from the mods directory, so the scan is skipped there.
+ */
+public class ManifestScanner {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".scan";
+    private static final String MAIN_ATTRIBUTES_CLASS = "org.spongepowered.asm.launch.platform.MainAttributes";
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String MIXIN_CONFIGS = "MixinConfigs";
+    private static volatile CompletableFuture<Map<Path, Attributes>> scan;
+    
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+    
+    /**
+     * Starts scanning the mods directory in the background.
+     */
+    public static synchronized void start(IEnvironment environment) {
+        if (!isEnabled() || scan != null) {
+            return;
+        }
+        
+        if (IEnvironment.class.getPackage().isCompatibleWith("8.0")) {
+            MixinBootstrap.LOGGER.warn("{} is not supported on ModLauncher v{}", PROPERTY, IEnvironment.class.getPackage().getImplementationVersion());
+            return;
+        }
+        
+        Path gamePath = environment.getProperty(IEnvironment.Keys.GAMEDIR.get()).orElseGet(() -> Paths.get("."));
+        Path modsPath = gamePath.resolve("mods").toAbsolutePath().normalize();
+        Path cachePath = gamePath.resolve("." + MixinBootstrap.ID).resolve("manifests.cache").toAbsolutePath().normalize();
+        scan = CompletableFuture.supplyAsync(() -> scan(modsPath, cachePath), runnable -> {
+            Thread thread = new Thread(runnable, MixinBootstrap.NAME + " Manifest Scanner");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+    
+    /**
+     * Waits for the scan and seeds the {@code MainAttributes} cache of the Mixin loaded by the {@link ClassLoader}.
+     */
+    @SuppressWarnings("unchecked")
+    public static void apply(ClassLoader classLoader) {
+        CompletableFuture<Map<Path, Attributes>> future = scan;
+        if (future == null) {
+            return;
+        }
+        
+        long start = LaunchProfiler.start();
+        try {
+            Map<Path, Attributes> manifests = future.join();
+            
+            // org.spongepowered.asm.launch.platform.MainAttributes
+            Class<?> mainAttributesClass = Class.forName(MAIN_ATTRIBUTES_CLASS, true, classLoader);
+            Constructor<?> mainAttributesConstructor = mainAttributesClass.getDeclaredConstructor();
+            mainAttributesConstructor.setAccessible(true);
+            
+            // org.spongepowered.asm.launch.platform.MainAttributes.attributes
+            Field attributesField = mainAttributesClass.getDeclaredField("attributes");
+            attributesField.setAccessible(true);
+            
+            // org.spongepowered.asm.launch.platform.MainAttributes.instances
+            Field instancesField = mainAttributesClass.getDeclaredField("instances");
+            instancesField.setAccessible(true);
+            Map<URI, Object> instances = (Map<URI, Object>) instancesField.get(null);
+            
+            int configs = 0;
+            for (Map.Entry<Path, Attributes> entry : manifests.entrySet()) {
+                Object mainAttributes = mainAttributesConstructor.newInstance();
+                ((Attributes) attributesField.get(mainAttributes)).putAll(entry.getValue());
+                instances.putIfAbsent(getKey(entry.getKey()), mainAttributes);
+                
+                String value = entry.getValue().getValue(MIXIN_CONFIGS);
+                if (value != null && !value.isEmpty()) {
+                    configs += value.split(",").length;
+                }
+            }
+            
+            MixinBootstrap.LOGGER.debug("Found {} mixin configs in {} jars", configs, manifests.size());
+        } catch (Throwable ex) {
+            MixinBootstrap.LOGGER.warn("Failed to apply the manifest scan, Mixin will read the manifests itself", ex);
+        } finally {
+            scan = null;
+            LaunchProfiler.stop("applyManifestScan", MixinBootstrap.ID, start);
+        }
+    }
+    
+    /**
+     * {@code ContainerHandleModLauncher.Resource} passes {@link Path#toUri()} of the offered path to
+     * {@code MainAttributes.of(URI)}. Forge offers the mods directory resolved against its absolute, normalized game
+     * directory, the same as {@link #start(IEnvironment)}.
+     */
+    static URI getKey(Path path) {
+        return path.toUri();
+    }
+    
+    private static Map<Path, Attributes> scan(Path modsPath, Path cachePath) {
+        long start = LaunchProfiler.start();
+        if (!Files.isDirectory(modsPath)) {
+            return Collections.emptyMap();
+        }
+        
+        List<Path> paths;
+        try (Stream<Path> stream = Files.list(modsPath)) {
+            paths = stream
+                    .filter(path -> path.getFileName().toString().endsWith(".jar") && Files.isRegularFile(path))
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            MixinBootstrap.LOGGER.warn("Encountered an error while listing {}", modsPath, ex);
+            return Collections.emptyMap();
+        }
+        
+        Map<String, CacheEntry> cache = readCache(cachePath);
+        Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+        Map<Path, Attributes> manifests = new ConcurrentHashMap<>();
+        AtomicBoolean modified = new AtomicBoolean(cache.size() != paths.size());
+        paths.parallelStream().forEach(path -> {
+            try {
+                long size = Files.size(path);
+                long lastModified = Files.getLastModifiedTime(path).toMillis();
+                CacheEntry entry = cache.get(path.toString());
+                if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                    entry = new CacheEntry(size, lastModified, readAttributes(path));
+                    modified.set(true);
+                }
+                
+                entries.put(path.toString(), entry);
+                manifests.put(path, entry.attributes);
+            } catch (Exception ex) {
+                // Left for Mixin to report
+                MixinBootstrap.LOGGER.debug("Failed to scan {}", path, ex);
+            }
+        });
+        
+        if (modified.get()) {
+            writeCache(cachePath, entries);
+        }
+        
+        LaunchProfiler.stop("scan", modsPath.toString(), start);
+        return manifests;
+    }
+    
+    private static Attributes readAttributes(Path path) throws IOException {
+        byte[] bytes = ZipIndex.readEntry(path, MANIFEST_NAME);
+        if (bytes == null) {
+            return new Attributes();
+        }
+        
+        return new Manifest(new ByteArrayInputStream(bytes)).getMainAttributes();
+    }
+    
+    /**
+     * Each line holds the size, modification time, Base64 encoded main attributes and path of a jar.
+     */
+    private static Map<String, CacheEntry> readCache(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return Collections.emptyMap();
+        }
+        
+        Map<String, CacheEntry> cache = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split("\t", 4);
+                if (values.length != 4) {
+                    continue;
+                }
+                
+                Manifest manifest = new Manifest(new ByteArrayInputStream(Base64.getDecoder().decode(values[2])));
+                cache.put(values[3], new CacheEntry(Long.parseLong(values[0]), Long.parseLong(values[1]), manifest.getMainAttributes()));
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.warn("Discarding {}: {}", path, ex.getMessage());
+            return Collections.emptyMap();
+        }
+        
+        return cache;
+    }
+    
+    private static void writeCache(Path path, Map<String, CacheEntry> entries) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path temporaryPath = Files.createTempFile(path.getParent(), "manifests-", ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                        Manifest manifest = new Manifest();
+                        manifest.getMainAttributes().putAll(entry.getValue().attributes);
+                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                        manifest.write(outputStream);
+                        
+                        writer.write(entry.getValue().size + "\t" + entry.getValue().lastModified + "\t" + Base64.getEncoder().encodeToString(outputStream.toByteArray()) + "\t" + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+                
+                try {
+                    Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.warn("Encountered an error while writing {}", path, ex);
+        }
+    }
+    
+    private static class CacheEntry {
+        
+        private final long size;
+        private final long lastModified;
+        private final Attributes attributes;
+        
+        private CacheEntry(long size, long lastModified, Attributes attributes) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.attributes = attributes;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free counters grouped by component, always collected and available through {@link #snapshot()}.
+ * <p>
+ * With {@code -Dmixinbootstrap.jmx=true} each group is also registered as a read-only MBean named
+ * {@code io.github.lxgaming.mixinbootstrap:type=<group>}. Registration is opt-in as creating the platform
+ * MBeanServer is noticeable during launch.
+ */
+public class Metrics {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".jmx";
+    public static final String DOMAIN = "io.github.lxgaming.mixinbootstrap";
+    private static final boolean JMX_ENABLED = Boolean.getBoolean(PROPERTY);
+    private static final Map<String, Group> GROUPS = new ConcurrentHashMap<>();
+    
+    public static Group group(String name) {
+        Group group = GROUPS.get(name);
+        if (group != null) {
+            return group;
+        }
+        
+        return GROUPS.computeIfAbsent(name, key -> {
+            Group newGroup = new Group(key);
+            if (JMX_ENABLED) {
+                register(newGroup);
+            }
+            
+            return newGroup;
+        });
+    }
+    
+    /**
+     * Returns the current value of every metric keyed by {@code <group>.<name>}.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Group group : GROUPS.values()) {
+            for (Map.Entry<String, Long> entry : group.snapshot().entrySet()) {
+                snapshot.put(group.getName() + "." + entry.getKey(), entry.getValue());
+            }
+        }
+        
+        return snapshot;
+    }
+    
+    private static void register(Group group) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(group, new ObjectName(DOMAIN, "type", group.getName()));
+        } catch (InstanceAlreadyExistsException ex) {
+            // The same group registered by a copy of this class in another ClassLoader
+            MixinBootstrap.LOGGER.debug("MBean {} is already registered", group.getName());
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.warn("Encountered an error while registering MBean {}", group.getName(), ex);
+        }
+    }
+    
+    public static class Group implements DynamicMBean {
+        
+        private final String name;
+        private final Map<String, LongSupplier> metrics;
+        private final Map<String, LongAdder> counters;
+        
+        private Group(String name) {
+            this.name = name;
+            this.metrics = new ConcurrentHashMap<>();
+            this.counters = new ConcurrentHashMap<>();
+        }
+        
+        /**
+         * Returns the counter with the given name, hot paths should hold on to the returned counter.
+         */
+        public LongAdder counter(String metric) {
+            LongAdder counter = counters.get(metric);
+            if (counter != null) {
+                return counter;
+            }
+            
+            return counters.computeIfAbsent(metric, key -> {
+                LongAdder newCounter = new LongAdder();
+                metrics.put(key, newCounter::sum);
+                return newCounter;
+            });
+        }
+        
+        /**
+         * Exposes a value owned by another component, registering the same name again replaces it.
+         */
+        public void register(String metric, LongSupplier supplier) {
+            metrics.put(metric, supplier);
+        }
+        
+        public Map<String, Long> snapshot() {
+            Map<String, Long> snapshot = new TreeMap<>();
+            for (Map.Entry<String, LongSupplier> entry : metrics.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().getAsLong());
+            }
+            
+            return snapshot;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier supplier = metrics.get(attribute);
+            if (supplier == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            
+            return supplier.getAsLong();
+        }
+        
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+        
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList attributeList = new AttributeList();
+            for (String attribute : attributes) {
+                LongSupplier supplier = metrics.get(attribute);
+                if (supplier != null) {
+                    attributeList.add(new Attribute(attribute, supplier.getAsLong()));
+                }
+            }
+            
+            return attributeList;
+        }
+        
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+        
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+        
+        /**
+         * Built on every call as metrics can be registered at any time.
+         */
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String metric : new TreeMap<>(metrics).keySet()) {
+                attributes.add(new MBeanAttributeInfo(metric, long.class.getName(), metric, true, false, false));
+            }
+            
+            return new MBeanInfo(Group.class.getName(), MixinBootstrap.NAME + " " + name, attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+        }
+    }
+}
\ No newline at end of file
@@ -24,18 +24,14 @@ import io.github.lxgaming.classloader.ClassLoaderUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.net.URI;
+import java.io.IOException;
 import java.net.URL;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 public class MixinBootstrap {
@@ -44,6 +40,15 @@ public class MixinBootstrap {
     public static final String NAME = "MixinBootstrap";
     public static final String VERSION = "@version@";
     public static final Logger LOGGER = LogManager.getLogger(NAME + " Launch");
+    private static final String LIBRARIES_DIRECTORY = "META-INF/libraries/";
+    private static final String LIBRARIES_MODE_PROPERTY = ID + ".libraries.mode";
+    private static final String LIBRARIES_MODE_MEMORY = "memory";
+    private static final String ASYNC_PROPERTY = ID + ".async";
+    private static final String MIXIN_LAUNCH_PLUGIN = "org.spongepowered.asm.launch.MixinLaunchPlugin";
+    private static final String MIXIN_LAUNCH_PLUGIN_LEGACY = "org.spongepowered.asm.launch.MixinLaunchPluginLegacy";
+    private static final String MIXIN_TRANSFORMATION_SERVICE = "org.spongepowered.asm.launch.MixinTransformationService";
+    private static final String MIXIN_TRANSFORMATION_SERVICE_LEGACY = "org.spongepowered.asm.launch.MixinTransformationServiceLegacy";
+    private static volatile CompletableFuture<Void> preparation;
     
     static {
         LOGGER.info("{} v{}", NAME, VERSION);
@@ -51,8 +56,35 @@ public class MixinBootstrap {
         LOGGER.info("ModLauncher v{} ({})", IEnvironment.class.getPackage().getImplementationVersion(), IEnvironment.class.getPackage().getSpecificationVersion());
     }
     
+    /**
+     * Starts appending the libraries and initializing the Mixin classes on a background thread when
+     * {@code -Dmixinbootstrap.async=true} is set, {@link #onLoad} waits for it to complete.
+     */
+    public static void prepare(IEnvironment environment) {
+        if (!Boolean.getBoolean(ASYNC_PROPERTY) || environment.findLaunchPlugin("mixin").isPresent()) {
+            return;
+        }
+        
+        // Captured here as the background thread may not share the launcher's context class loader
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        preparation = CompletableFuture.runAsync(() -> {
+            try {
+                prepare(environment, contextClassLoader);
+            } catch (IncompatibleEnvironmentException ex) {
+                throw new CompletionException(ex);
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, NAME + " Bootstrap");
+            thread.setContextClassLoader(contextClassLoader);
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+    
     public static void initialize(IEnvironment environment) {
+        long start = LaunchProfiler.start();
         ensureTransformerExclusion();
+        LaunchProfiler.stop("ensureTransformerExclusion", ID, start);
     }
     
     public static void onLoad(IEnvironment environment, MixinTransformationService service) throws IncompatibleEnvironmentException {
@@ -61,29 +93,40 @@ public class MixinBootstrap {
             return;
         }
         
+        // Only required once MixinBootstrap has to register Mixin itself
+        LauncherAccessors.validate();
+        
+        boolean prepared = awaitPreparation();
         if (IEnvironment.class.getPackage().isCompatibleWith("8.0")) {
+            long start = LaunchProfiler.start();
             setFallbackClassLoader(service.getClass().getClassLoader());
+            LaunchProfiler.stop("setFallbackClassLoader", ID, start);
             
             // Mixin
             // - Plugin Service
-            service.registerLaunchPluginService("org.spongepowered.asm.launch.MixinLaunchPlugin", MixinBootstrap.class.getClassLoader());
+            service.registerLaunchPluginService(MIXIN_LAUNCH_PLUGIN, MixinBootstrap.class.getClassLoader());
             
             // - Transformation Service
             // This cannot be loaded by the ServiceLoader as it will load classes under the wrong classloader
-            service.registerTransformationService("org.spongepowered.asm.launch.MixinTransformationService", MixinBootstrap.class.getClassLoader());
+            service.registerTransformationService(MIXIN_TRANSFORMATION_SERVICE, MixinBootstrap.class.getClassLoader());
             return;
         }
         
         if (IEnvironment.class.getPackage().isCompatibleWith("4.0")) {
-            appendToClassPath();
+            if (!prepared) {
+                long start = LaunchProfiler.start();
+                appendToClassPath(environment, Thread.currentThread().getContextClassLoader());
+                LaunchProfiler.stop("appendToClassPath", ID, start);
+            }
             
             // Mixin
             // - Plugin Service
-            service.registerLaunchPluginService("org.spongepowered.asm.launch.MixinLaunchPluginLegacy", Launcher.class.getClassLoader());
+            service.registerLaunchPluginService(MIXIN_LAUNCH_PLUGIN_LEGACY, Launcher.class.getClassLoader());
             
             // - Transformation Service
             // This cannot be loaded by the ServiceLoader as it will load classes under the wrong classloader
-            service.registerTransformationService("org.spongepowered.asm.launch.MixinTransformationServiceLegacy", Thread.currentThread().getContextClassLoader());
+            service.registerTransformationService(MIXIN_TRANSFORMATION_SERVICE_LEGACY, Thread.currentThread().getContextClassLoader());
+            ManifestScanner.apply(Thread.currentThread().getContextClassLoader());
             
             // MixinBootstrap
             // - Plugin Service
@@ -98,60 +141,179 @@ public class MixinBootstrap {
         throw new IncompatibleEnvironmentException("Incompatibility with ModLauncher");
     }
     
-    private static void appendToClassPath() throws IncompatibleEnvironmentException {
+    private static void prepare(IEnvironment environment, ClassLoader contextClassLoader) throws IncompatibleEnvironmentException {
+        if (IEnvironment.class.getPackage().isCompatibleWith("8.0")) {
+            initializeClass(MIXIN_LAUNCH_PLUGIN, MixinBootstrap.class.getClassLoader());
+            initializeClass(MIXIN_TRANSFORMATION_SERVICE, MixinBootstrap.class.getClassLoader());
+            return;
+        }
+        
+        if (IEnvironment.class.getPackage().isCompatibleWith("4.0")) {
+            long start = LaunchProfiler.start();
+            appendToClassPath(environment, contextClassLoader);
+            LaunchProfiler.stop("appendToClassPath", ID, start);
+            
+            initializeClass(MIXIN_LAUNCH_PLUGIN_LEGACY, Launcher.class.getClassLoader());
+            initializeClass(MIXIN_TRANSFORMATION_SERVICE_LEGACY, contextClassLoader);
+        }
+    }
+    
+    /**
+     * Waits for {@link #prepare(IEnvironment)}, returns {@code true} if the libraries have already been appended.
+     */
+    private static boolean awaitPreparation() throws IncompatibleEnvironmentException {
+        CompletableFuture<Void> future = preparation;
+        if (future == null) {
+            return false;
+        }
+        
+        long start = LaunchProfiler.start();
         try {
-            Map<String, String> map = new HashMap<>();
-            map.put("create", "true");
-            FileSystem fileSystem = FileSystems.newFileSystem(URI.create("jar:" + MixinBootstrap.class.getProtectionDomain().getCodeSource().getLocation().toURI()), map);
-            Map<Path, String> libraries = Files.list(fileSystem.getPath("META-INF", "libraries"))
-                    .filter(path -> !Files.isDirectory(path) && path.getFileName().toString().endsWith(".jar"))
-                    .collect(Collectors.toMap(path -> path, path -> {
-                        String fileName = path.getFileName().toString();
-                        int index = fileName.lastIndexOf('.');
-                        return index != -1 ? fileName.substring(0, index) : fileName;
-                    }));
+            future.join();
+            return true;
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IncompatibleEnvironmentException) {
+                throw (IncompatibleEnvironmentException) ex.getCause();
+            }
             
-            LOGGER.debug("Found {} libraries", libraries.size());
+            LOGGER.error("Encountered an error while preparing", ex.getCause());
+            throw new IncompatibleEnvironmentException("Failed to prepare");
+        } finally {
+            LaunchProfiler.stop("awaitPreparation", ID, start);
+        }
+    }
+    
+    /**
+     * Runs the static initializers ahead of time, failures are left for the registration to report.
+     */
+    private static void initializeClass(String className, ClassLoader classLoader) {
+        long start = LaunchProfiler.start();
+        try {
+            Class.forName(className, true, classLoader);
+        } catch (Throwable ex) {
+            LOGGER.debug("Failed to initialize {}", className, ex);
+        } finally {
+            LaunchProfiler.stop("initializeClass", className, start);
+        }
+    }
+    
+    private static void appendToClassPath(IEnvironment environment, ClassLoader classLoader) throws IncompatibleEnvironmentException {
+        try {
+            Path path = Paths.get(MixinBootstrap.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            ZipIndex zipIndex = ZipIndex.map(path);
+            ClassIndex classIndex = ClassIndex.load(zipIndex);
+            if (classIndex == null) {
+                LOGGER.debug("{} is missing, reading the central directory of each library", ClassIndex.NAME);
+            }
             
-            for (Map.Entry<Path, String> entry : libraries.entrySet()) {
-                Path temporaryPath = Files.createTempFile(MixinBootstrap.ID + "-" + entry.getValue() + "-", ".jar");
-                
-                LOGGER.debug("Copying {} -> {}", entry.getKey(), temporaryPath);
-                Files.copy(entry.getKey(), temporaryPath, StandardCopyOption.REPLACE_EXISTING);
-                
-                URL url = temporaryPath.toUri().toURL();
-                LOGGER.debug("Loading {}", url);
-                ClassLoaderUtils.appendToClassPath(Thread.currentThread().getContextClassLoader(), url);
+            if (LIBRARIES_MODE_MEMORY.equalsIgnoreCase(System.getProperty(LIBRARIES_MODE_PROPERTY))) {
+                LOGGER.warn("Serving libraries from memory is experimental, their URLs cannot be recreated from a String");
+                appendNestedLibraries(zipIndex, classIndex, classLoader);
+            } else {
+                appendCachedLibraries(environment, zipIndex, classIndex, classLoader);
             }
             
             URL url = MixinBootstrap.class.getProtectionDomain().getCodeSource().getLocation().toURI().toURL();
             LOGGER.debug("Loading {}", url);
-            ClassLoaderUtils.appendToClassPath(Thread.currentThread().getContextClassLoader(), url);
+            ClassLoaderUtils.appendToClassPath(classLoader, url);
+            if (ClassListRecorder.isEnabled()) {
+                // Mixin and the shaded dependencies are defined by the ClassLoader this jar is appended to
+                ClassListRecorder.addLibrary(classLoader, path, zipIndex);
+            }
         } catch (Throwable ex) {
             LOGGER.error("Encountered an error while appending to the class path", ex);
             throw new IncompatibleEnvironmentException("Failed to append to the class path");
         }
     }
     
+    private static void appendCachedLibraries(IEnvironment environment, ZipIndex zipIndex, ClassIndex classIndex, ClassLoader classLoader) throws Throwable {
+        List<ZipIndex.Entry> libraries = getLibraries(zipIndex);
+        LOGGER.debug("Found {} libraries", libraries.size());
+        
+        LibraryCache libraryCache = createLibraryCache(environment);
+        for (ZipIndex.Entry entry : libraries) {
+            String name = entry.getName().substring(LIBRARIES_DIRECTORY.length());
+            Path cachedPath = libraryCache.getPath(name, zipIndex.getBytes(entry));
+            URL url = cachedPath.toUri().toURL();
+            LOGGER.debug("Loading {}", url);
+            ClassLoaderUtils.appendToClassPath(classLoader, url);
+            if (ClassListRecorder.isEnabled()) {
+                // The cached library has the same content as the nested entry, so the indexed offsets still apply
+                ClassListRecorder.addLibrary(classLoader, cachedPath, ZipIndex.map(cachedPath, classIndex != null ? classIndex.getEntries(name) : null));
+            }
+        }
+        
+        Metrics.Group metrics = Metrics.group("bootstrap");
+        metrics.counter("libraries").add(libraries.size());
+        metrics.counter("bytesCopied").add(libraryCache.getBytesCopied());
+        libraryCache.cleanup();
+    }
+    
+    /**
+     * Serves the libraries directly from the memory mapped jar, nothing is written to disk.
+     */
+    private static void appendNestedLibraries(ZipIndex zipIndex, ClassIndex classIndex, ClassLoader classLoader) throws Throwable {
+        List<ZipIndex.Entry> libraries = getLibraries(zipIndex);
+        LOGGER.debug("Found {} libraries", libraries.size());
+        
+        Metrics.group("bootstrap").counter("libraries").add(libraries.size());
+        NestedJarHandler nestedJarHandler = new NestedJarHandler();
+        for (ZipIndex.Entry entry : libraries) {
+            String name = entry.getName().substring(LIBRARIES_DIRECTORY.length());
+            URL url = nestedJarHandler.register(zipIndex, entry, classIndex != null ? classIndex.getEntries(name) : null);
+            LOGGER.debug("Loading {}", url);
+            ClassLoaderUtils.appendToClassPath(classLoader, url);
+            if (ClassListRecorder.isEnabled()) {
+                ClassListRecorder.addLibrary(classLoader, null, nestedJarHandler.getLibrary(url));
+            }
+        }
+    }
+    
+    private static List<ZipIndex.Entry> getLibraries(ZipIndex zipIndex) {
+        return zipIndex.getEntries().stream()
+                .filter(entry -> {
+                    String name = entry.getName();
+                    return name.startsWith(LIBRARIES_DIRECTORY) && name.endsWith(".jar") && name.indexOf('/', LIBRARIES_DIRECTORY.length()) == -1;
+                })
+                .collect(Collectors.toList());
+    }
+    
+    private static LibraryCache createLibraryCache(IEnvironment environment) throws IOException {
+        String property = System.getProperty(LibraryCache.DIRECTORY_PROPERTY);
+        Path path;
+        if (property != null && !property.isEmpty()) {
+            path = Paths.get(property);
+        } else {
+            path = environment.getProperty(IEnvironment.Keys.GAMEDIR.get())
+                    .map(parentPath -> parentPath.resolve("." + ID).resolve("libraries"))
+                    .orElseGet(() -> Paths.get(System.getProperty("java.io.tmpdir"), ID + "-libraries"));
+        }
+        
+        try {
+            return new LibraryCache(Files.createDirectories(path.toAbsolutePath().normalize()));
+        } catch (IOException ex) {
+            // Read-only game directory
+            Path temporaryPath = Paths.get(System.getProperty("java.io.tmpdir"), ID + "-libraries");
+            LOGGER.warn("Failed to create {}, falling back to {}", path, temporaryPath);
+            return new LibraryCache(Files.createDirectories(temporaryPath));
+        }
+    }
+    
     /**
      * Mixin requires it can be loaded in context class loader.
      * Thanks <a href="https://github.com/ZekerZhayard">ZekerZhayard</a>
      */
     private static void setFallbackClassLoader(ClassLoader classLoader) throws IncompatibleEnvironmentException {
         try {
-            Class<?> moduleClassLoaderClass = Class.forName("cpw.mods.cl.ModuleClassLoader");
             ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
-            if (!moduleClassLoaderClass.isInstance(contextClassLoader) || classLoader.equals(contextClassLoader)) {
+            if (!LauncherAccessors.isModuleClassLoader(contextClassLoader) || classLoader.equals(contextClassLoader)) {
                 throw new IllegalStateException("Unexpected ClassLoader: " + contextClassLoader.getClass().getName());
             }
             
-            Method getPlatformClassLoaderMethod = ClassLoader.class.getMethod("getPlatformClassLoader");
-            getPlatformClassLoaderMethod.setAccessible(true);
-            ClassLoader platformClassLoader = (ClassLoader) getPlatformClassLoaderMethod.invoke(null);
-            
-            Method setFallbackClassLoaderMethod = moduleClassLoaderClass.getMethod("setFallbackClassLoader", ClassLoader.class);
-            setFallbackClassLoaderMethod.setAccessible(true);
-            setFallbackClassLoaderMethod.invoke(contextClassLoader, new MixinClassLoader(platformClassLoader, classLoader));
+            ClassLoader platformClassLoader = LauncherAccessors.getPlatformClassLoader();
+            MixinClassLoader mixinClassLoader = new MixinClassLoader(platformClassLoader, classLoader);
+            LauncherAccessors.setFallbackClassLoader(contextClassLoader, mixinClassLoader);
+            ClassPrefetcher.define(mixinClassLoader);
         } catch (Throwable ex) {
             LOGGER.error("Encountered an error while setting fallback classloader", ex);
             throw new IncompatibleEnvironmentException("Failed to set fallback classloader");
@@ -161,7 +323,6 @@ public class MixinBootstrap {
     /**
      * Fixes https://github.com/MinecraftForge/MinecraftForge/pull/6600
      */
-    @SuppressWarnings("unchecked")
     private static void ensureTransformerExclusion() {
         try {
             Path path = Launcher.INSTANCE.environment().getProperty(IEnvironment.Keys.GAMEDIR.get())
@@ -184,13 +345,7 @@ public class MixinBootstrap {
                 return;
             }
             
-            Class<?> modDirTransformerDiscovererClass = Class.forName("net.minecraftforge.fml.loading.ModDirTransformerDiscoverer", true, Launcher.class.getClassLoader());
-            
-            // net.minecraftforge.fml.loading.ModDirTransformerDiscoverer.transformers
-            Field transformersField = modDirTransformerDiscovererClass.getDeclaredField("transformers");
-            transformersField.setAccessible(true);
-            List<Path> transformers = (List<Path>) transformersField.get(null);
-            
+            List<Path> transformers = LauncherAccessors.getTransformers();
             if (transformers != null && !transformers.contains(path)) {
                 transformers.add(path);
             }
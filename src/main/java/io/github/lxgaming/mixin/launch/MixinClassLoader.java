@@ -16,19 +16,106 @@
 
 package io.github.lxgaming.mixin.launch;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MixinClassLoader extends ClassLoader {
     
+    private static final String INVALID_CLASSES_PROPERTY = MixinBootstrap.ID + ".classloader.invalidClasses";
+    private static final List<String> CHILD_PACKAGES = Arrays.asList(
+            "org.objectweb.asm.",
+            "org.spongepowered.asm."
+    );
+    
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+    
+    private final ClassLoader parent;
     private final ClassLoader child;
+    private final Map<String, ClassLoader> packageRoutes;
+    private final ThreadLocal<Set<String>> loadingClasses;
     private final Set<String> invalidClasses;
+    private final Queue<String> invalidClassQueue;
+    private final int maximumInvalidClasses;
+    private final LongAdder routeHits;
+    private final LongAdder routeMisses;
+    private final LongAdder classNotFound;
+    private final LongAdder time;
     
     public MixinClassLoader(ClassLoader parent, ClassLoader child) {
         super(parent);
+        this.parent = parent;
         this.child = child;
+        this.packageRoutes = new ConcurrentHashMap<>();
+        this.loadingClasses = ThreadLocal.withInitial(HashSet::new);
         this.invalidClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        this.invalidClassQueue = new ConcurrentLinkedQueue<>();
+        this.maximumInvalidClasses = Integer.getInteger(INVALID_CLASSES_PROPERTY, 4096);
+        this.routeHits = new LongAdder();
+        this.routeMisses = new LongAdder();
+        this.classNotFound = new LongAdder();
+        this.time = new LongAdder();
+        
+        Metrics.Group metrics = Metrics.group("classloader");
+        metrics.register("lookups", () -> getRouteHits() + getRouteMisses());
+        metrics.register("routeHits", this::getRouteHits);
+        metrics.register("routeMisses", this::getRouteMisses);
+        metrics.register("classNotFound", this::getClassNotFound);
+        metrics.register("nanos", this::getTime);
+        
+        if (MixinClassLoader.class.getClassLoader() == child) {
+            for (String packageName : getPackages(MixinClassLoader.class)) {
+                packageRoutes.put(packageName, child);
+            }
+            
+            // Covers Java 8 and the unnamed module, which only reports the packages defined so far
+            ClassIndex classIndex = ClassIndex.load(MixinClassLoader.class);
+            if (classIndex != null) {
+                for (String packageName : classIndex.getPackages()) {
+                    packageRoutes.putIfAbsent(packageName, child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Classes are never defined by this ClassLoader, so there is nothing to lock or look up before delegating.
+     */
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        long start = System.nanoTime();
+        try {
+            Class<?> loadedClass;
+            ClassLoader classLoader = getRoute(name);
+            if (classLoader != null) {
+                loadedClass = loadRoutedClass(name, classLoader);
+            } else {
+                loadedClass = loadUnroutedClass(name);
+                routeMisses.increment();
+            }
+            
+            ClassListRecorder.record(loadedClass);
+            ClassPrefetcher.record(loadedClass);
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            
+            return loadedClass;
+        } catch (ClassNotFoundException ex) {
+            classNotFound.increment();
+            throw ex;
+        } finally {
+            time.add(System.nanoTime() - start);
+        }
     }
     
     @Override
@@ -37,10 +124,155 @@ public class MixinClassLoader extends ClassLoader {
             throw new ClassNotFoundException(name);
         }
         
-        invalidClasses.add(name);
-        Class<?> validClass = child.loadClass(name);
-        invalidClasses.remove(name);
+        // The child may delegate back to this ClassLoader, guard against recursion on the current thread only
+        Set<String> classes = loadingClasses.get();
+        if (!classes.add(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        
+        try {
+            return child.loadClass(name);
+        } catch (ClassNotFoundException ex) {
+            addInvalidClass(name);
+            throw ex;
+        } finally {
+            classes.remove(name);
+        }
+    }
+    
+    /**
+     * Number of successful lookups which went straight to the owning ClassLoader.
+     */
+    public long getRouteHits() {
+        return routeHits.sum();
+    }
+    
+    /**
+     * Number of successful lookups for packages which were not routed yet or which were found by the other
+     * ClassLoader of a split package.
+     */
+    public long getRouteMisses() {
+        return routeMisses.sum();
+    }
+    
+    /**
+     * Number of lookups which failed with a {@link ClassNotFoundException}.
+     */
+    public long getClassNotFound() {
+        return classNotFound.sum();
+    }
+    
+    /**
+     * Cumulative time spent in {@link #loadClass(String, boolean)} in nanoseconds, including nested lookups.
+     */
+    public long getTime() {
+        return time.sum();
+    }
+    
+    private Class<?> loadRoutedClass(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        try {
+            Class<?> loadedClass = classLoader == child ? findClass(name) : classLoader.loadClass(name);
+            routeHits.increment();
+            return loadedClass;
+        } catch (ClassNotFoundException ex) {
+            // Split package on the class path, the other ClassLoader may still have it
+            Class<?> loadedClass = classLoader == child ? loadParentClass(name, ex) : findClass(name);
+            routeMisses.increment();
+            return loadedClass;
+        }
+    }
+    
+    private Class<?> loadParentClass(String name, ClassNotFoundException ex) throws ClassNotFoundException {
+        if (parent == null) {
+            throw ex;
+        }
         
-        return validClass;
+        return parent.loadClass(name);
+    }
+    
+    private Class<?> loadUnroutedClass(String name) throws ClassNotFoundException {
+        // Already missed by both ClassLoaders
+        if (invalidClasses.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        
+        if (parent != null) {
+            try {
+                Class<?> loadedClass = parent.loadClass(name);
+                putRoute(name, parent);
+                return loadedClass;
+            } catch (ClassNotFoundException ex) {
+                // no-op
+            }
+        }
+        
+        Class<?> loadedClass = findClass(name);
+        putRoute(name, child);
+        return loadedClass;
+    }
+    
+    /**
+     * Packages are usually owned by a single module, once a package has been resolved by either ClassLoader that
+     * ClassLoader is consulted first for the package. Packages may be split on the class path, so the other
+     * ClassLoader is still consulted when the routed one misses.
+     */
+    private ClassLoader getRoute(String name) {
+        int index = name.lastIndexOf('.');
+        if (index == -1) {
+            return null;
+        }
+        
+        ClassLoader classLoader = packageRoutes.get(name.substring(0, index));
+        if (classLoader != null) {
+            return classLoader;
+        }
+        
+        for (String packageName : CHILD_PACKAGES) {
+            if (name.startsWith(packageName)) {
+                return child;
+            }
+        }
+        
+        return null;
+    }
+    
+    private void putRoute(String name, ClassLoader classLoader) {
+        int index = name.lastIndexOf('.');
+        if (index != -1) {
+            packageRoutes.putIfAbsent(name.substring(0, index), classLoader);
+        }
+    }
+    
+    /**
+     * Remembers a class which could not be found, the oldest entries are evicted once
+     * {@link #maximumInvalidClasses} is exceeded.
+     */
+    private void addInvalidClass(String name) {
+        if (maximumInvalidClasses <= 0 || !invalidClasses.add(name)) {
+            return;
+        }
+        
+        invalidClassQueue.offer(name);
+        while (invalidClasses.size() > maximumInvalidClasses) {
+            String invalidClass = invalidClassQueue.poll();
+            if (invalidClass == null) {
+                break;
+            }
+            
+            invalidClasses.remove(invalidClass);
+        }
+    }
+    
+    /**
+     * Java 9+ {@code Class#getModule().getPackages()}, returns an empty set when unavailable.
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String> getPackages(Class<?> targetClass) {
+        try {
+            Object module = Class.class.getMethod("getModule").invoke(targetClass);
+            return (Set<String>) module.getClass().getMethod("getPackages").invoke(module);
+        } catch (Exception ex) {
+            return Collections.emptySet();
+        }
     }
 }
\ No newline at end of file
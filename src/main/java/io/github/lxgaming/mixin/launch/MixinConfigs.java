@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.transformer.Config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The configs selected by Mixin, shared by the {@link PrefilterLaunchPluginService} and the {@link ClassPrewarmer}.
+ */
+public class MixinConfigs {
+    
+    /**
+     * Returns {@code true} once Mixin has selected every config in the default phase.
+     */
+    public static boolean isSelected() {
+        return MixinEnvironment.getCurrentEnvironment().getPhase() == MixinEnvironment.Phase.DEFAULT && Mixins.getUnvisitedCount() == 0;
+    }
+    
+    /**
+     * Returns a snapshot of the configs, or {@code null} if a config is being added concurrently.
+     */
+    public static List<Config> getConfigs() {
+        try {
+            return new ArrayList<>(Mixins.getConfigs());
+        } catch (ConcurrentModificationException ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the targets of the configs as binary names, Mixin reports them with either separator.
+     */
+    public static Set<String> getTargets(Collection<Config> configs) {
+        Set<String> targets = new LinkedHashSet<>();
+        for (Config config : configs) {
+            for (String target : config.getConfig().getTargets()) {
+                targets.add(target.replace('/', '.'));
+            }
+        }
+        
+        return targets;
+    }
+    
+    /**
+     * Returns the outermost class of the nest the class belongs to, by name as nest hosts and members are only
+     * known once the class has been read.
+     */
+    public static String getNestRoot(String className) {
+        int start = className.lastIndexOf('.') + 1;
+        int index = className.indexOf('$', start);
+        return index > start ? className.substring(0, index) : className;
+    }
+}
\ No newline at end of file
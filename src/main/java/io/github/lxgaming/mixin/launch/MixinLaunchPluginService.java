@@ -22,20 +22,43 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
 public class MixinLaunchPluginService implements ILaunchPluginService {
     
-    private static final List<String> SKIP_PACKAGES = Arrays.asList(
+    /**
+     * Comma separated list of additional packages which will not be loaded by the {@link TransformingClassLoader}.
+     */
+    public static final String SKIP_PACKAGES_PROPERTY = MixinBootstrap.ID + ".skipPackages";
+    
+    /**
+     * Packages which are never loaded by the {@link TransformingClassLoader}, also used by the benchmarks.
+     */
+    static final List<String> SKIP_PACKAGES = Collections.unmodifiableList(Arrays.asList(
             "org.objectweb.asm.",
             "org.spongepowered.asm.launch.",
             "org.spongepowered.asm.lib.",
             "org.spongepowered.asm.mixin.",
             "org.spongepowered.asm.service.",
             "org.spongepowered.asm.util."
-    );
+    ));
+    
+    private final LongAdder evaluations;
+    private final LongAdder skipped;
+    
+    public MixinLaunchPluginService() {
+        this.evaluations = new LongAdder();
+        this.skipped = new LongAdder();
+    }
     
     @Override
     public String name() {
@@ -65,6 +88,36 @@ public class MixinLaunchPluginService implements ILaunchPluginService {
     @Override
     public void initializeLaunch(ITransformerLoader transformerLoader, Path[] specialPaths) {
         TransformingClassLoader classLoader = (TransformingClassLoader) Thread.currentThread().getContextClassLoader();
-        classLoader.addTargetPackageFilter(name -> SKIP_PACKAGES.stream().noneMatch(name::startsWith));
+        Predicate<String> packageFilter = createPackageFilter().negate();
+        classLoader.addTargetPackageFilter(name -> {
+            evaluations.increment();
+            if (packageFilter.test(name)) {
+                return true;
+            }
+            
+            skipped.increment();
+            return false;
+        });
+    }
+    
+    /**
+     * Returns the {@code targetFilter} metrics. This class is loaded by a different ClassLoader than {@link Metrics},
+     * so {@link MixinTransformationService} registers them through JDK types.
+     */
+    public Map<String, LongSupplier> getMetrics() {
+        Map<String, LongSupplier> metrics = new LinkedHashMap<>();
+        metrics.put("evaluations", evaluations::sum);
+        metrics.put("skipped", skipped::sum);
+        return metrics;
+    }
+    
+    private PackageFilter createPackageFilter() {
+        List<String> packages = new ArrayList<>(SKIP_PACKAGES);
+        String property = System.getProperty(SKIP_PACKAGES_PROPERTY);
+        if (property != null) {
+            packages.addAll(Arrays.asList(property.split(",")));
+        }
+        
+        return PackageFilter.of(packages);
     }
 }
\ No newline at end of file
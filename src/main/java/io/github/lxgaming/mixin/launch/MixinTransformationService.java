@@ -16,33 +16,42 @@
 
 package io.github.lxgaming.mixin.launch;
 
-import cpw.mods.modlauncher.LaunchPluginHandler;
 import cpw.mods.modlauncher.Launcher;
 import cpw.mods.modlauncher.api.IEnvironment;
 import cpw.mods.modlauncher.api.ITransformationService;
 import cpw.mods.modlauncher.api.ITransformer;
 import cpw.mods.modlauncher.api.IncompatibleEnvironmentException;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import joptsimple.OptionSpec;
 import joptsimple.OptionSpecBuilder;
 
-import java.lang.reflect.Field;
 import java.net.URL;
 import java.nio.file.Path;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 public class MixinTransformationService implements ITransformationService {
     
     private final Map<String, ILaunchPluginService> launchPluginServices;
-    private final Set<ITransformationService> transformationServices;
+    private final LaunchPluginServiceWrappers launchPluginServiceWrappers;
+    private final ServiceRegistry<ILaunchPluginService> launchPluginServiceRegistry;
+    private final ServiceRegistry<ITransformationService> transformationServices;
+    private final Map<ProtectionDomain, String> fileNames;
+    @SuppressWarnings("rawtypes")
+    private volatile List<ITransformer> transformers;
+    private volatile List<Map.Entry<String, Path>> scanResults;
+    private OptionSpec<String> skipPackagesOption;
     
     public MixinTransformationService() {
         if (Launcher.INSTANCE == null) {
@@ -50,7 +59,31 @@ public class MixinTransformationService implements ITransformationService {
         }
         
         this.launchPluginServices = getLaunchPluginServices();
-        this.transformationServices = new HashSet<>();
+        this.launchPluginServiceWrappers = new LaunchPluginServiceWrappers(this.launchPluginServices);
+        this.launchPluginServiceRegistry = new ServiceRegistry<>();
+        this.transformationServices = new ServiceRegistry<>();
+        this.fileNames = new ConcurrentHashMap<>();
+        
+        // Plugins discovered by ModLauncher count as duplicates as well
+        if (this.launchPluginServices != null) {
+            for (ILaunchPluginService launchPluginService : this.launchPluginServices.values()) {
+                this.launchPluginServiceRegistry.index(launchPluginService);
+            }
+        }
+        
+        // ModLauncher does not call the delegated services once the game has launched
+        LaunchTrimmer.register("transformationServices", () -> {
+            this.launchPluginServiceRegistry.clear();
+            this.transformationServices.clear();
+            this.fileNames.clear();
+            this.transformers = null;
+            this.scanResults = null;
+        });
+        
+        // Overlaps the bootstrap with the construction of the remaining services
+        ClassPrefetcher.start(Launcher.INSTANCE.environment());
+        ManifestScanner.start(Launcher.INSTANCE.environment());
+        MixinBootstrap.prepare(Launcher.INSTANCE.environment());
     }
     
     @Override
@@ -60,62 +93,140 @@ public class MixinTransformationService implements ITransformationService {
     
     @Override
     public void initialize(IEnvironment environment) {
+        long start = LaunchProfiler.start();
         MixinBootstrap.initialize(environment);
         
-        for (ITransformationService transformationService : this.transformationServices) {
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             transformationService.initialize(environment);
+            LaunchProfiler.stop("initialize", transformationService.name(), serviceStart);
         }
+        
+        // Mixin has looked up its own launch plugin
+        this.launchPluginServiceWrappers.install();
+        
+        // Waits for the launch in the background, Mixin has not selected its configs yet
+        ClassPrewarmer.start();
+        LaunchProfiler.stop("initialize", name(), start);
+        LaunchProfiler.report();
     }
     
     @Override
     public void beginScanning(IEnvironment environment) {
-        for (ITransformationService transformationService : this.transformationServices) {
+        long start = LaunchProfiler.start();
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             transformationService.beginScanning(environment);
+            LaunchProfiler.stop("beginScanning", transformationService.name(), serviceStart);
         }
+        
+        LaunchProfiler.stop("beginScanning", name(), start);
+        LaunchProfiler.report();
     }
     
     @Override
     public void onLoad(IEnvironment env, Set<String> otherServices) throws IncompatibleEnvironmentException {
+        if (this.launchPluginServices != null && (ClassListRecorder.isEnabled() || ClassPrefetcher.isEnabled() || ClassPrewarmer.isEnabled() || LaunchTrimmer.isEnabled())) {
+            this.launchPluginServices.put(ObserverLaunchPluginService.NAME, new ObserverLaunchPluginService());
+        }
+        
+        long start = LaunchProfiler.start();
         MixinBootstrap.onLoad(env, this);
         
-        for (ITransformationService transformationService : this.transformationServices) {
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             transformationService.onLoad(env, otherServices);
+            LaunchProfiler.stop("onLoad", transformationService.name(), serviceStart);
         }
+        
+        LaunchProfiler.stop("onLoad", name(), start);
+        LaunchProfiler.report();
     }
     
     @Override
     @SuppressWarnings("rawtypes")
     public List<ITransformer> transformers() {
+        List<ITransformer> transformers = this.transformers;
+        if (transformers != null) {
+            return transformers;
+        }
+        
+        long start = LaunchProfiler.start();
         List<ITransformer> list = new ArrayList<>();
-        for (ITransformationService transformationService : this.transformationServices) {
-            list.addAll(transformationService.transformers());
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
+            for (ITransformer transformer : transformationService.transformers()) {
+                list.add(TransformationProfiler.wrap(transformationService.name(), transformer));
+            }
+            
+            LaunchProfiler.stop("transformers", transformationService.name(), serviceStart);
         }
         
-        return list;
+        LaunchProfiler.stop("transformers", name(), start);
+        LaunchProfiler.report();
+        this.transformers = Collections.unmodifiableList(list);
+        return this.transformers;
     }
     
     @Override
     public void arguments(BiFunction<String, String, OptionSpecBuilder> argumentBuilder) {
-        for (ITransformationService transformationService : this.transformationServices) {
+        this.skipPackagesOption = argumentBuilder.apply("skipPackages", "Packages which will not be loaded by the TransformingClassLoader")
+                .withRequiredArg()
+                .withValuesSeparatedBy(',');
+        
+        long start = LaunchProfiler.start();
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             transformationService.arguments(argumentBuilder);
+            LaunchProfiler.stop("arguments", transformationService.name(), serviceStart);
         }
+        
+        LaunchProfiler.stop("arguments", name(), start);
     }
     
     @Override
     public void argumentValues(OptionResult option) {
-        for (ITransformationService transformationService : this.transformationServices) {
+        // The launch plugin is loaded by a different ClassLoader, pass the values through a system property
+        List<String> skipPackages = new ArrayList<>(option.values(this.skipPackagesOption));
+        if (!skipPackages.isEmpty()) {
+            String property = System.getProperty(MixinLaunchPluginService.SKIP_PACKAGES_PROPERTY);
+            if (property != null && !property.isEmpty()) {
+                skipPackages.add(property);
+            }
+            
+            System.setProperty(MixinLaunchPluginService.SKIP_PACKAGES_PROPERTY, String.join(",", skipPackages));
+        }
+        
+        long start = LaunchProfiler.start();
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             transformationService.argumentValues(option);
+            LaunchProfiler.stop("argumentValues", transformationService.name(), serviceStart);
         }
+        
+        LaunchProfiler.stop("argumentValues", name(), start);
+        LaunchProfiler.report();
     }
     
     @Override
     public List<Map.Entry<String, Path>> runScan(IEnvironment environment) {
+        List<Map.Entry<String, Path>> scanResults = this.scanResults;
+        if (scanResults != null) {
+            return scanResults;
+        }
+        
+        long start = LaunchProfiler.start();
         List<Map.Entry<String, Path>> list = new ArrayList<>();
-        for (ITransformationService transformationService : this.transformationServices) {
+        for (ITransformationService transformationService : this.transformationServices.getServices()) {
+            long serviceStart = LaunchProfiler.start();
             list.addAll(transformationService.runScan(environment));
+            LaunchProfiler.stop("runScan", transformationService.name(), serviceStart);
         }
         
-        return list;
+        LaunchProfiler.stop("runScan", name(), start);
+        LaunchProfiler.report();
+        this.scanResults = Collections.unmodifiableList(list);
+        return this.scanResults;
     }
     
     @Override
@@ -128,44 +239,42 @@ public class MixinTransformationService implements ITransformationService {
         return null;
     }
     
-    @SuppressWarnings("unchecked")
     private Map<String, ILaunchPluginService> getLaunchPluginServices() {
         try {
-            // cpw.mods.modlauncher.Launcher.launchPlugins
-            Field launchPluginsField = Launcher.class.getDeclaredField("launchPlugins");
-            launchPluginsField.setAccessible(true);
-            LaunchPluginHandler launchPluginHandler = (LaunchPluginHandler) launchPluginsField.get(Launcher.INSTANCE);
-            
-            // cpw.mods.modlauncher.LaunchPluginHandler.plugins
-            Field pluginsField = LaunchPluginHandler.class.getDeclaredField("plugins");
-            pluginsField.setAccessible(true);
-            return (Map<String, ILaunchPluginService>) pluginsField.get(launchPluginHandler);
-        } catch (Exception ex) {
-            MixinBootstrap.LOGGER.error("Encountered an error while getting LaunchPluginServices", ex);
+            return LauncherAccessors.getLaunchPluginServices(Launcher.INSTANCE);
+        } catch (Throwable ex) {
+            // Reported by LauncherAccessors.validate once MixinBootstrap requires it
+            MixinBootstrap.LOGGER.debug("Encountered an error while getting LaunchPluginServices", ex);
             return null;
         }
     }
     
     @SuppressWarnings("unchecked")
     public void registerLaunchPluginService(String className, ClassLoader classLoader) throws IncompatibleEnvironmentException {
+        long start = LaunchProfiler.start();
         try {
             Class<? extends ILaunchPluginService> launchPluginServiceClass = (Class<? extends ILaunchPluginService>) Class.forName(className, true, classLoader);
-            if (isLaunchPluginServicePresent(launchPluginServiceClass)) {
+            if (this.launchPluginServiceRegistry.isPresent(launchPluginServiceClass)) {
                 MixinBootstrap.LOGGER.warn("{} is already registered", launchPluginServiceClass.getSimpleName());
                 return;
             }
             
-            ILaunchPluginService launchPluginService = launchPluginServiceClass.newInstance();
+            ILaunchPluginService launchPluginService = LauncherAccessors.newInstance(launchPluginServiceClass);
             String pluginName = launchPluginService.name();
-            this.launchPluginServices.put(pluginName, launchPluginService);
+            if (this.launchPluginServices.containsKey(pluginName) || !this.launchPluginServiceRegistry.register(pluginName, launchPluginService)) {
+                MixinBootstrap.LOGGER.warn("{} is already registered", pluginName);
+                return;
+            }
+            
+            this.launchPluginServiceWrappers.register(launchPluginService);
+            registerMetrics(launchPluginService);
             
             List<Map<String, String>> mods = Launcher.INSTANCE.environment().getProperty(IEnvironment.Keys.MODLIST.get()).orElse(null);
             if (mods != null) {
-                Map<String, String> mod = new HashMap<>();
+                Map<String, String> mod = new HashMap<>(4);
                 mod.put("name", pluginName);
                 mod.put("type", "PLUGINSERVICE");
-                String fileName = launchPluginServiceClass.getProtectionDomain().getCodeSource().getLocation().getFile();
-                mod.put("file", fileName.substring(fileName.lastIndexOf('/')));
+                mod.put("file", getFileName(launchPluginServiceClass));
                 mods.add(mod);
             }
             
@@ -173,45 +282,66 @@ public class MixinTransformationService implements ITransformationService {
         } catch (Throwable ex) {
             MixinBootstrap.LOGGER.error("Encountered an error while registering {}", className, ex);
             throw new IncompatibleEnvironmentException(String.format("Failed to register %s", className));
+        } finally {
+            LaunchProfiler.stop("registerLaunchPluginService", className, start);
         }
     }
     
     @SuppressWarnings("unchecked")
     public void registerTransformationService(String className, ClassLoader classLoader) throws IncompatibleEnvironmentException {
+        long start = LaunchProfiler.start();
         try {
             Class<? extends ITransformationService> transformationServiceClass = (Class<? extends ITransformationService>) Class.forName(className, true, classLoader);
-            if (isTransformationServicePresent(transformationServiceClass)) {
+            if (this.transformationServices.isPresent(transformationServiceClass)) {
                 MixinBootstrap.LOGGER.warn("{} is already registered", transformationServiceClass.getSimpleName());
                 return;
             }
             
-            ITransformationService transformationService = transformationServiceClass.newInstance();
+            ITransformationService transformationService = LauncherAccessors.newInstance(transformationServiceClass);
             String name = transformationService.name();
-            this.transformationServices.add(transformationService);
+            if (!this.transformationServices.register(name, transformationService)) {
+                MixinBootstrap.LOGGER.warn("{} is already registered", name);
+                return;
+            }
+            
+            this.transformers = null;
+            this.scanResults = null;
             MixinBootstrap.LOGGER.debug("Registered {} ({})", transformationServiceClass.getSimpleName(), name);
-        } catch (Exception ex) {
+        } catch (Throwable ex) {
             MixinBootstrap.LOGGER.error("Encountered an error while registering {}", className, ex);
             throw new IncompatibleEnvironmentException(String.format("Failed to register %s", className));
+        } finally {
+            LaunchProfiler.stop("registerTransformationService", className, start);
         }
     }
     
-    private boolean isLaunchPluginServicePresent(Class<? extends ILaunchPluginService> launchPluginServiceClass) {
-        for (ILaunchPluginService launchPluginService : this.launchPluginServices.values()) {
-            if (launchPluginServiceClass.isInstance(launchPluginService)) {
-                return true;
-            }
-        }
-        
-        return false;
+    /**
+     * Plugins from the same jar share a {@link ProtectionDomain}, so the name is only computed once per jar.
+     */
+    private String getFileName(Class<?> targetClass) {
+        return this.fileNames.computeIfAbsent(targetClass.getProtectionDomain(), protectionDomain -> {
+            String fileName = protectionDomain.getCodeSource().getLocation().getFile();
+            return fileName.substring(fileName.lastIndexOf('/'));
+        });
     }
     
-    private boolean isTransformationServicePresent(Class<? extends ITransformationService> transformationServiceClass) {
-        for (ITransformationService transformationService : this.transformationServices) {
-            if (transformationServiceClass.isInstance(transformationService)) {
-                return true;
-            }
+    /**
+     * On ModLauncher 4-7 the {@link MixinLaunchPluginService} is loaded by {@link Launcher}'s ClassLoader, its metrics
+     * are registered here so they are part of the {@link Metrics} in this ClassLoader.
+     */
+    @SuppressWarnings("unchecked")
+    private void registerMetrics(ILaunchPluginService launchPluginService) {
+        Class<?> launchPluginServiceClass = launchPluginService.getClass();
+        if (!launchPluginServiceClass.getName().equals(MixinLaunchPluginService.class.getName())) {
+            return;
         }
         
-        return false;
+        try {
+            Map<String, LongSupplier> metrics = (Map<String, LongSupplier>) launchPluginServiceClass.getMethod("getMetrics").invoke(launchPluginService);
+            Metrics.Group group = Metrics.group("targetFilter");
+            metrics.forEach(group::register);
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.warn("Encountered an error while registering metrics for {}", launchPluginService.name(), ex);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves classes and resources from jars nested inside another jar without extracting them.
+ * <p>
+ * URLs take the form {@code mixinbootstrap:/<library>!/<entry>}, the handler is attached to each URL directly
+ * so nothing is registered with {@link URL#setURLStreamHandlerFactory}. As a consequence the URLs do not survive a
+ * round-trip through their string form, {@code new URL(url.toString())} fails with {@code unknown protocol}. The
+ * factory can only be set once per JVM and a {@code java.protocol.handler.pkgs} handler is loaded by the system
+ * ClassLoader, neither of which can be relied on inside ModLauncher, so this mode stays experimental.
+ */
+public class NestedJarHandler extends URLStreamHandler {
+    
+    public static final String PROTOCOL = MixinBootstrap.ID;
+    private static final String SEPARATOR = "!/";
+    
+    private final Map<String, ZipIndex> libraries;
+    
+    public NestedJarHandler() {
+        this.libraries = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Indexes the nested jar and returns the URL to append to the class path.
+     */
+    public URL register(ZipIndex zipIndex, ZipIndex.Entry entry) throws IOException {
+        return register(zipIndex, entry, null);
+    }
+    
+    /**
+     * Indexes the nested jar using entries from the {@link ClassIndex}, falling back to its own central directory.
+     */
+    public URL register(ZipIndex zipIndex, ZipIndex.Entry entry, Collection<ZipIndex.Entry> entries) throws IOException {
+        String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+        ByteBuffer buffer;
+        if (entry.getMethod() == ZipIndex.STORED) {
+            buffer = zipIndex.getData(entry);
+        } else {
+            // Compressed entries are inflated into memory once
+            buffer = ByteBuffer.wrap(zipIndex.getBytes(entry));
+        }
+        
+        libraries.put(name, entries != null ? ZipIndex.of(buffer, entries) : ZipIndex.of(buffer));
+        return new URL(PROTOCOL, "", -1, "/" + name + SEPARATOR, this);
+    }
+    
+    public ZipIndex getLibrary(URL url) {
+        String path = url.getPath();
+        int index = path.indexOf(SEPARATOR);
+        return index != -1 ? libraries.get(path.substring(1, index)) : null;
+    }
+    
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        String path = url.getPath();
+        int index = path.indexOf(SEPARATOR);
+        if (index == -1 || !path.startsWith("/")) {
+            throw new MalformedURLException("Invalid URL: " + url);
+        }
+        
+        ZipIndex zipIndex = libraries.get(path.substring(1, index));
+        if (zipIndex == null) {
+            throw new FileNotFoundException(url.toString());
+        }
+        
+        String name = decode(path.substring(index + SEPARATOR.length()));
+        return new NestedJarConnection(url, zipIndex, zipIndex.getEntry(name));
+    }
+    
+    private static String decode(String path) {
+        if (path.indexOf('%') == -1) {
+            return path;
+        }
+        
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(path.length());
+        for (int index = 0; index < path.length(); index++) {
+            char character = path.charAt(index);
+            if (character == '%' && index + 2 < path.length()) {
+                outputStream.write(Integer.parseInt(path.substring(index + 1, index + 3), 16));
+                index += 2;
+            } else {
+                outputStream.write(character);
+            }
+        }
+        
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static class NestedJarConnection extends URLConnection {
+        
+        private final ZipIndex zipIndex;
+        private final ZipIndex.Entry entry;
+        
+        private NestedJarConnection(URL url, ZipIndex zipIndex, ZipIndex.Entry entry) {
+            super(url);
+            this.zipIndex = zipIndex;
+            this.entry = entry;
+        }
+        
+        @Override
+        public void connect() throws IOException {
+            if (entry == null || entry.isDirectory()) {
+                throw new FileNotFoundException(url.toString());
+            }
+            
+            connected = true;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return zipIndex.getInputStream(entry);
+        }
+        
+        @Override
+        public int getContentLength() {
+            return entry != null ? entry.getSize() : -1;
+        }
+        
+        @Override
+        public long getContentLengthLong() {
+            return getContentLength();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+
+/**
+ * Reports every class defined by the {@code TransformingClassLoader} to the {@link ClassListRecorder} and
+ * {@link ClassPrefetcher} and {@link LaunchTrimmer}, hands the {@code TransformingClassLoader} to the
+ * {@link ClassPrewarmer} and schedules the {@link LaunchTrimmer} once the launch begins. Nothing is transformed.
+ */
+public class ObserverLaunchPluginService implements ILaunchPluginService {
+    
+    public static final String NAME = MixinBootstrap.ID + "-observer";
+    
+    @Override
+    public String name() {
+        return NAME;
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+        if (!isEmpty) {
+            ClassListRecorder.recordTransformed(classType.getClassName());
+            ClassPrefetcher.recordTransformed(classType.getClassName());
+            LaunchTrimmer.recordClass();
+        }
+        
+        return EnumSet.noneOf(Phase.class);
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty, String reason) {
+        // Only classes being defined, not those which are only inspected
+        if (reason == null || reason.equals("classloading")) {
+            return handlesClass(classType, isEmpty);
+        }
+        
+        return EnumSet.noneOf(Phase.class);
+    }
+    
+    @Override
+    public boolean processClass(Phase phase, ClassNode classNode, Type classType) {
+        return false;
+    }
+    
+    @Override
+    public void initializeLaunch(ITransformerLoader transformerLoader, Path[] specialPaths) {
+        ClassPrefetcher.setTransformingClassLoader(Thread.currentThread().getContextClassLoader());
+        ClassPrewarmer.setTransformingClassLoader(Thread.currentThread().getContextClassLoader());
+        LaunchTrimmer.schedule();
+    }
+}
\ No newline at end of file
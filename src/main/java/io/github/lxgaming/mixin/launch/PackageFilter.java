@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Allocation free package prefix matcher.
+ * <p>
+ * Prefixes covered by a shorter prefix are discarded, which leaves at most one candidate prefix for any name:
+ * the greatest prefix which sorts at or before it.
+ */
+public class PackageFilter implements Predicate<String> {
+    
+    private final String[] prefixes;
+    
+    private PackageFilter(String[] prefixes) {
+        this.prefixes = prefixes;
+    }
+    
+    public static PackageFilter of(Collection<String> packages) {
+        TreeSet<String> sortedPrefixes = new TreeSet<>();
+        for (String packageName : packages) {
+            String prefix = packageName.trim();
+            if (prefix.isEmpty()) {
+                continue;
+            }
+            
+            sortedPrefixes.add(prefix.endsWith(".") ? prefix : prefix + ".");
+        }
+        
+        List<String> prefixes = new ArrayList<>(sortedPrefixes.size());
+        for (String prefix : sortedPrefixes) {
+            if (prefixes.isEmpty() || !prefix.startsWith(prefixes.get(prefixes.size() - 1))) {
+                prefixes.add(prefix);
+            }
+        }
+        
+        return new PackageFilter(prefixes.toArray(new String[0]));
+    }
+    
+    @Override
+    public boolean test(String name) {
+        int index = Arrays.binarySearch(prefixes, name);
+        if (index >= 0) {
+            return true;
+        }
+        
+        // Insertion point - 1 is the greatest prefix less than the name
+        index = -index - 2;
+        return index >= 0 && name.startsWith(prefixes[index]);
+    }
+    
+    public List<String> getPrefixes() {
+        return Arrays.asList(prefixes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.Type;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.transformer.Config;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers {@link #handlesClass} for classes which are definitely not mixin targets without consulting the
+ * wrapped Mixin {@link ILaunchPluginService}, enabled with {@code -Dmixinbootstrap.prefilter=true}.
+ * <p>
+ * The {@link BloomFilter} is built from the nests of the targets and the mixin packages of every selected config, a
+ * class is passed through if the outermost class of its nest might be a target. This keeps inner, synthetic and nest
+ * host classes of targets visible to Mixin and its coprocessors. Until Mixin has selected all configs in the default
+ * phase every class is passed through. Empty (generated) classes and calls made for any reason other than class
+ * loading are always passed through.
+ * <p>
+ * The configs are only checked every {@link #CHECK_INTERVAL}, a config added after the default phase is picked up
+ * by the next check.
+ */
+public class PrefilterLaunchPluginService extends DelegatingLaunchPluginService {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".prefilter";
+    private static final String CLASSLOADING_REASON = "classloading";
+    private static final double FALSE_POSITIVE_RATE = 0.01D;
+    private static final long CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100L);
+    
+    private final LongAdder skipped;
+    private final LongAdder passed;
+    private final LongAdder bypassed;
+    private final LongAdder falsePositives;
+    private volatile Filter filter;
+    private volatile long nextCheck;
+    
+    public PrefilterLaunchPluginService(ILaunchPluginService launchPluginService) {
+        super(launchPluginService);
+        this.skipped = new LongAdder();
+        this.passed = new LongAdder();
+        this.bypassed = new LongAdder();
+        this.falsePositives = new LongAdder();
+        this.nextCheck = System.nanoTime();
+        
+        Metrics.Group metrics = Metrics.group("prefilter");
+        metrics.register("skipped", this::getSkipped);
+        metrics.register("passed", this::getPassed);
+        metrics.register("bypassed", this::getBypassed);
+        metrics.register("falsePositives", this::getFalsePositives);
+    }
+    
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+    
+    public static ILaunchPluginService wrap(ILaunchPluginService launchPluginService) {
+        if (!isEnabled() || !launchPluginService.name().equals("mixin")) {
+            return launchPluginService;
+        }
+        
+        PrefilterLaunchPluginService prefilterLaunchPluginService = new PrefilterLaunchPluginService(launchPluginService);
+        Runtime.getRuntime().addShutdownHook(new Thread(prefilterLaunchPluginService::report, MixinBootstrap.NAME + " Prefilter"));
+        return prefilterLaunchPluginService;
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+        if (!isEmpty && isSkipped(classType)) {
+            return EnumSet.noneOf(Phase.class);
+        }
+        
+        return launchPluginService.handlesClass(classType, isEmpty);
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty, String reason) {
+        if (!isEmpty && CLASSLOADING_REASON.equals(reason) && isSkipped(classType)) {
+            return EnumSet.noneOf(Phase.class);
+        }
+        
+        return launchPluginService.handlesClass(classType, isEmpty, reason);
+    }
+    
+    /**
+     * Number of calls answered without consulting Mixin.
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+    
+    /**
+     * Number of calls passed to Mixin because the class might be a target.
+     */
+    public long getPassed() {
+        return passed.sum();
+    }
+    
+    /**
+     * Number of calls passed to Mixin because the filter was not available.
+     */
+    public long getBypassed() {
+        return bypassed.sum();
+    }
+    
+    /**
+     * Number of passed calls for classes which do not belong to the nest of a target.
+     */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+    
+    public void report() {
+        long passed = getPassed();
+        long falsePositives = getFalsePositives();
+        MixinBootstrap.LOGGER.info("Prefilter: {} skipped, {} passed, {} bypassed, {} false positives ({}%)",
+                getSkipped(), passed, getBypassed(), falsePositives, passed != 0 ? String.format("%.2f", falsePositives * 100D / passed) : "0.00");
+    }
+    
+    private boolean isSkipped(Type classType) {
+        Filter currentFilter = getFilter();
+        if (currentFilter == null) {
+            bypassed.increment();
+            return false;
+        }
+        
+        String className = classType.getClassName();
+        if (currentFilter.packageFilter.test(className)) {
+            passed.increment();
+            return false;
+        }
+        
+        String nestRoot = MixinConfigs.getNestRoot(className);
+        if (!currentFilter.bloomFilter.mightContain(nestRoot)) {
+            skipped.increment();
+            return true;
+        }
+        
+        passed.increment();
+        if (!currentFilter.nests.contains(nestRoot)) {
+            falsePositives.increment();
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the current filter, the configs are only consulted once every {@link #CHECK_INTERVAL} as Mixin copies
+     * them on every call.
+     */
+    private Filter getFilter() {
+        long time = System.nanoTime();
+        if (time - nextCheck < 0) {
+            return filter;
+        }
+        
+        synchronized (this) {
+            if (time - nextCheck < 0) {
+                return filter;
+            }
+            
+            nextCheck = time + CHECK_INTERVAL;
+            if (!MixinConfigs.isSelected()) {
+                filter = null;
+                return null;
+            }
+            
+            List<Config> configs = MixinConfigs.getConfigs();
+            if (configs == null) {
+                // A config is being added, pass everything through until the next check
+                filter = null;
+                return null;
+            }
+            
+            Filter currentFilter = filter;
+            if (currentFilter != null && currentFilter.configs == configs.size()) {
+                return currentFilter;
+            }
+            
+            Set<String> nests = new HashSet<>();
+            for (String target : MixinConfigs.getTargets(configs)) {
+                nests.add(MixinConfigs.getNestRoot(target));
+            }
+            
+            List<String> packages = new ArrayList<>();
+            for (Config config : configs) {
+                IMixinConfig mixinConfig = config.getConfig();
+                if (mixinConfig.getMixinPackage() != null && !mixinConfig.getMixinPackage().isEmpty()) {
+                    packages.add(mixinConfig.getMixinPackage());
+                }
+            }
+            
+            BloomFilter bloomFilter = BloomFilter.of(nests, FALSE_POSITIVE_RATE);
+            filter = new Filter(configs.size(), nests, bloomFilter, PackageFilter.of(packages));
+            MixinBootstrap.LOGGER.debug("Built prefilter for {} nests across {} configs ({} bits, {} hashes)", nests.size(), configs.size(), bloomFilter.getBits(), bloomFilter.getHashes());
+            return filter;
+        }
+    }
+    
+    private static class Filter {
+        
+        private final int configs;
+        private final Set<String> nests;
+        private final BloomFilter bloomFilter;
+        private final PackageFilter packageFilter;
+        
+        private Filter(int configs, Set<String> nests, BloomFilter bloomFilter, PackageFilter packageFilter) {
+            this.configs = configs;
+            this.nests = nests;
+            this.bloomFilter = bloomFilter;
+            this.packageFilter = packageFilter;
+        }
+    }
+}
\ No newline at end of file
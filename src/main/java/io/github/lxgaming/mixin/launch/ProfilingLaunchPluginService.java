@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.EnumSet;
+
+/**
+ * Times every call ModLauncher makes into the wrapped {@link ILaunchPluginService}.
+ */
+public class ProfilingLaunchPluginService extends DelegatingLaunchPluginService {
+    
+    public ProfilingLaunchPluginService(ILaunchPluginService launchPluginService) {
+        super(launchPluginService);
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+        long start = System.nanoTime();
+        EnumSet<Phase> phases = launchPluginService.handlesClass(classType, isEmpty);
+        TransformationProfiler.record(classType.getClassName(), name() + ":handlesClass", System.nanoTime() - start, 0, 0);
+        return phases;
+    }
+    
+    @Override
+    public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty, String reason) {
+        long start = System.nanoTime();
+        EnumSet<Phase> phases = launchPluginService.handlesClass(classType, isEmpty, reason);
+        TransformationProfiler.record(classType.getClassName(), name() + ":handlesClass", System.nanoTime() - start, 0, 0);
+        return phases;
+    }
+    
+    @Override
+    public boolean processClass(Phase phase, ClassNode classNode, Type classType) {
+        int sizeIn = TransformationProfiler.getSize(classNode);
+        long start = System.nanoTime();
+        boolean result = launchPluginService.processClass(phase, classNode, classType);
+        TransformationProfiler.record(classType.getClassName(), name() + ":" + phase, System.nanoTime() - start, sizeIn, TransformationProfiler.getSize(classNode));
+        return result;
+    }
+    
+    @Override
+    public boolean processClass(Phase phase, ClassNode classNode, Type classType, String reason) {
+        int sizeIn = TransformationProfiler.getSize(classNode);
+        long start = System.nanoTime();
+        boolean result = launchPluginService.processClass(phase, classNode, classType, reason);
+        TransformationProfiler.record(classType.getClassName(), name() + ":" + phase, System.nanoTime() - start, sizeIn, TransformationProfiler.getSize(classNode));
+        return result;
+    }
+    
+    @Override
+    protected int delegateProcessClassWithFlags(Phase phase, ClassNode classNode, Type classType, String reason) {
+        int sizeIn = TransformationProfiler.getSize(classNode);
+        long start = System.nanoTime();
+        int result = super.delegateProcessClassWithFlags(phase, classNode, classType, reason);
+        TransformationProfiler.record(classType.getClassName(), name() + ":" + phase, System.nanoTime() - start, sizeIn, TransformationProfiler.getSize(classNode));
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Set;
+
+/**
+ * Times the wrapped {@link ITransformer}.
+ * <p>
+ * ModLauncher determines the node type from the generic interface of the transformer class,
+ * so a subclass exists for each node type.
+ */
+public abstract class ProfilingTransformer<T> implements ITransformer<T> {
+    
+    private final String name;
+    private final ITransformer<T> transformer;
+    
+    protected ProfilingTransformer(String serviceName, ITransformer<T> transformer) {
+        this.name = serviceName + ":" + transformer.getClass().getName();
+        this.transformer = transformer;
+    }
+    
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static ITransformer of(String serviceName, ITransformer transformer) {
+        Set<Target> targets = transformer.targets();
+        if (targets == null || targets.isEmpty()) {
+            return transformer;
+        }
+        
+        TargetType targetType = targets.iterator().next().getTargetType();
+        if (targetType == TargetType.CLASS) {
+            return new ClassTransformer(serviceName, transformer);
+        }
+        
+        if (targetType == TargetType.METHOD) {
+            return new MethodTransformer(serviceName, transformer);
+        }
+        
+        if (targetType == TargetType.FIELD) {
+            return new FieldTransformer(serviceName, transformer);
+        }
+        
+        return transformer;
+    }
+    
+    @Override
+    public T transform(T input, ITransformerVotingContext context) {
+        int sizeIn = TransformationProfiler.getSize(input);
+        long start = System.nanoTime();
+        T output = transformer.transform(input, context);
+        TransformationProfiler.record(context.getClassName(), name, System.nanoTime() - start, sizeIn, TransformationProfiler.getSize(output));
+        return output;
+    }
+    
+    @Override
+    public TransformerVoteResult castVote(ITransformerVotingContext context) {
+        return transformer.castVote(context);
+    }
+    
+    @Override
+    public Set<Target> targets() {
+        return transformer.targets();
+    }
+    
+    @Override
+    public String[] labels() {
+        return transformer.labels();
+    }
+    
+    public ITransformer<T> getTransformer() {
+        return transformer;
+    }
+    
+    public static class ClassTransformer extends ProfilingTransformer<ClassNode> implements ITransformer<ClassNode> {
+        
+        public ClassTransformer(String serviceName, ITransformer<ClassNode> transformer) {
+            super(serviceName, transformer);
+        }
+    }
+    
+    public static class FieldTransformer extends ProfilingTransformer<FieldNode> implements ITransformer<FieldNode> {
+        
+        public FieldTransformer(String serviceName, ITransformer<FieldNode> transformer) {
+            super(serviceName, transformer);
+        }
+    }
+    
+    public static class MethodTransformer extends ProfilingTransformer<MethodNode> implements ITransformer<MethodNode> {
+        
+        public MethodTransformer(String serviceName, ITransformer<MethodNode> transformer) {
+            super(serviceName, transformer);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Delegated services in registration order, indexed by name and by class.
+ * <p>
+ * Duplicate checks are constant time, a service is present for a class if it is an instance of that class. The
+ * services are iterated through an immutable snapshot which is only rebuilt after a registration, so registering
+ * {@code n} services is linear and delegation does not hold the lock.
+ */
+public class ServiceRegistry<T> {
+    
+    private final Map<String, T> services;
+    private final Set<Class<?>> classes;
+    private volatile List<T> snapshot;
+    
+    public ServiceRegistry() {
+        this.services = new LinkedHashMap<>();
+        this.classes = new HashSet<>();
+        this.snapshot = Collections.emptyList();
+    }
+    
+    /**
+     * Registers the service, returns {@code false} if a service with the same name is already present.
+     */
+    public synchronized boolean register(String name, T service) {
+        if (services.putIfAbsent(name, service) != null) {
+            return false;
+        }
+        
+        index(service);
+        snapshot = null;
+        return true;
+    }
+    
+    /**
+     * Indexes the class of a service which is owned elsewhere, so it is found by {@link #isPresent(Class)}.
+     */
+    public synchronized void index(Object service) {
+        index(service.getClass());
+    }
+    
+    public synchronized boolean isPresent(Class<?> serviceClass) {
+        return classes.contains(serviceClass);
+    }
+    
+    public synchronized boolean isPresent(String name) {
+        return services.containsKey(name);
+    }
+    
+    /**
+     * Returns an immutable snapshot of the services in registration order.
+     */
+    public List<T> getServices() {
+        List<T> services = snapshot;
+        if (services != null) {
+            return services;
+        }
+        
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = Collections.unmodifiableList(new ArrayList<>(this.services.values()));
+            }
+            
+            return snapshot;
+        }
+    }
+    
+    public synchronized int size() {
+        return services.size();
+    }
+    
+    /**
+     * Indexes the class with its superclasses and every interface it implements, classes which are already present
+     * have been indexed with their supertypes.
+     */
+    private void index(Class<?> serviceClass) {
+        if (serviceClass == null || !classes.add(serviceClass)) {
+            return;
+        }
+        
+        index(serviceClass.getSuperclass());
+        for (Class<?> serviceInterface : serviceClass.getInterfaces()) {
+            index(serviceInterface);
+        }
+    }
+    
+    public synchronized void clear() {
+        services.clear();
+        classes.clear();
+        snapshot = Collections.emptyList();
+    }
+}
\ No newline at end of file
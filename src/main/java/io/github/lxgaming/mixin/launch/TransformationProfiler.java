@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the time spent transforming each class, enabled with {@code -Dmixinbootstrap.profiler.transformations=<file>}.
+ * <p>
+ * ASM trees carry no byte size, the instruction count is recorded as the size before and after each transformation.
+ * The report is written and the most expensive classes are logged when the JVM shuts down.
+ */
+public class TransformationProfiler {
+    
+    public static final String PROPERTY = MixinBootstrap.ID + ".profiler.transformations";
+    public static final String TOP_PROPERTY = MixinBootstrap.ID + ".profiler.top";
+    private static final String DEFAULT_FILE = MixinBootstrap.ID + "-transformations.csv";
+    private static final Path PATH = getPath();
+    private static final boolean ENABLED = PATH != null;
+    private static final Map<String, Map<String, Statistic>> STATISTICS = new ConcurrentHashMap<>();
+    
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(TransformationProfiler::report, MixinBootstrap.NAME + " Transformation Profiler"));
+        }
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static ILaunchPluginService wrap(ILaunchPluginService launchPluginService) {
+        if (!ENABLED || launchPluginService instanceof ProfilingLaunchPluginService) {
+            return launchPluginService;
+        }
+        
+        return new ProfilingLaunchPluginService(launchPluginService);
+    }
+    
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static ITransformer wrap(String serviceName, ITransformer transformer) {
+        if (!ENABLED || transformer instanceof ProfilingTransformer) {
+            return transformer;
+        }
+        
+        return ProfilingTransformer.of(serviceName, transformer);
+    }
+    
+    public static void record(String className, String phase, long duration, int sizeIn, int sizeOut) {
+        Statistic statistic = STATISTICS.computeIfAbsent(className, key -> new ConcurrentHashMap<>()).computeIfAbsent(phase, key -> new Statistic());
+        statistic.count.increment();
+        statistic.duration.add(duration);
+        statistic.sizeIn.add(sizeIn);
+        statistic.sizeOut.add(sizeOut);
+    }
+    
+    public static int getSize(Object object) {
+        if (object instanceof ClassNode) {
+            int size = 0;
+            for (MethodNode methodNode : ((ClassNode) object).methods) {
+                size += methodNode.instructions.size();
+            }
+            
+            return size;
+        }
+        
+        if (object instanceof MethodNode) {
+            return ((MethodNode) object).instructions.size();
+        }
+        
+        return 0;
+    }
+    
+    public static synchronized void report() {
+        if (!ENABLED) {
+            return;
+        }
+        
+        List<Map.Entry<String, Long>> classes = new ArrayList<>();
+        Map<String, Long> phases = new ConcurrentHashMap<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(PATH, StandardCharsets.UTF_8)) {
+            writer.write("class,phase,count,duration_ms,size_in,size_out");
+            writer.newLine();
+            for (Map.Entry<String, Map<String, Statistic>> classEntry : STATISTICS.entrySet()) {
+                long classDuration = 0L;
+                for (Map.Entry<String, Statistic> phaseEntry : classEntry.getValue().entrySet()) {
+                    Statistic statistic = phaseEntry.getValue();
+                    long duration = statistic.duration.sum();
+                    classDuration += duration;
+                    phases.merge(phaseEntry.getKey(), duration, Long::sum);
+                    writer.write(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%d,%d",
+                            classEntry.getKey(), phaseEntry.getKey(), statistic.count.sum(), duration / 1_000_000D, statistic.sizeIn.sum(), statistic.sizeOut.sum()));
+                    writer.newLine();
+                }
+                
+                classes.add(new AbstractMap.SimpleImmutableEntry<>(classEntry.getKey(), classDuration));
+            }
+        } catch (Exception ex) {
+            MixinBootstrap.LOGGER.error("Encountered an error while writing {}", PATH, ex);
+        }
+        
+        int top = Integer.getInteger(TOP_PROPERTY, 20);
+        MixinBootstrap.LOGGER.info("Transformed {} classes, report written to {}", classes.size(), PATH);
+        MixinBootstrap.LOGGER.info("Most expensive classes:");
+        classes.stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(entry -> MixinBootstrap.LOGGER.info(" - {} ({} ms)", entry.getKey(), String.format(Locale.ROOT, "%.3f", entry.getValue() / 1_000_000D)));
+        
+        MixinBootstrap.LOGGER.info("Most expensive phases:");
+        phases.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(entry -> MixinBootstrap.LOGGER.info(" - {} ({} ms)", entry.getKey(), String.format(Locale.ROOT, "%.3f", entry.getValue() / 1_000_000D)));
+    }
+    
+    private static Path getPath() {
+        String property = System.getProperty(PROPERTY);
+        if (property == null || property.isEmpty() || property.equalsIgnoreCase("false")) {
+            return null;
+        }
+        
+        if (property.equalsIgnoreCase("true")) {
+            return Paths.get(DEFAULT_FILE).toAbsolutePath();
+        }
+        
+        return Paths.get(property).toAbsolutePath();
+    }
+    
+    private static class Statistic {
+        
+        private final LongAdder count;
+        private final LongAdder duration;
+        private final LongAdder sizeIn;
+        private final LongAdder sizeOut;
+        
+        private Statistic() {
+            this.count = new LongAdder();
+            this.duration = new LongAdder();
+            this.sizeIn = new LongAdder();
+            this.sizeOut = new LongAdder();
+        }
+    }
+}
\ No newline at end of file
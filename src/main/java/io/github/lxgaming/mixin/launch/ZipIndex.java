@@ -0,0 +1,350 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only index over the central directory of a zip held in a {@link ByteBuffer}.
+ */
+public class ZipIndex {
+    
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054B50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014B50;
+    private static final int CENTRAL_DIRECTORY_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034B50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+    
+    private ZipIndex(ByteBuffer buffer, Map<String, Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+    
+    public static ZipIndex map(Path path) throws IOException {
+        return map(path, null);
+    }
+    
+    /**
+     * Maps the zip with the given entries, the central directory is only read when they are {@code null}.
+     */
+    public static ZipIndex map(Path path, Collection<Entry> entries) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            return entries != null ? of(buffer, entries) : of(buffer);
+        }
+    }
+    
+    /**
+     * Reads a single entry with positional reads into heap buffers, nothing is mapped so the file is not held open.
+     * Returns {@code null} if the zip does not contain the entry.
+     */
+    public static byte[] readEntry(Path path, String name) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+            ByteBuffer tail = read(fileChannel, size - tailLength, tailLength);
+            int endOffset = findEndOfCentralDirectory(tail);
+            int count = tail.getShort(endOffset + 10) & 0xFFFF;
+            int centralDirectorySize = tail.getInt(endOffset + 12);
+            long centralDirectoryOffset = tail.getInt(endOffset + 16) & 0xFFFFFFFFL;
+            
+            ByteBuffer centralDirectory = read(fileChannel, centralDirectoryOffset, centralDirectorySize);
+            Entry entry = readEntries(centralDirectory, 0, count).get(name);
+            if (entry == null) {
+                return null;
+            }
+            
+            ByteBuffer localHeader = read(fileChannel, entry.getLocalHeaderOffset() & 0xFFFFFFFFL, LOCAL_HEADER_SIZE);
+            if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for " + entry.getName());
+            }
+            
+            int nameLength = localHeader.getShort(26) & 0xFFFF;
+            int extraLength = localHeader.getShort(28) & 0xFFFF;
+            int length = LOCAL_HEADER_SIZE + nameLength + extraLength + entry.getCompressedSize();
+            ByteBuffer buffer = read(fileChannel, entry.getLocalHeaderOffset() & 0xFFFFFFFFL, length);
+            
+            // The buffer starts at the local header of the entry
+            Entry relativeEntry = new Entry(entry.getName(), entry.getMethod(), entry.getCompressedSize(), entry.getSize(), 0);
+            return new ZipIndex(buffer, Collections.singletonMap(name, relativeEntry)).getBytes(relativeEntry);
+        }
+    }
+    
+    public static ZipIndex of(ByteBuffer buffer) throws IOException {
+        ByteBuffer duplicate = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int endOffset = findEndOfCentralDirectory(duplicate);
+        int count = duplicate.getShort(endOffset + 10) & 0xFFFF;
+        int offset = duplicate.getInt(endOffset + 16);
+        return new ZipIndex(duplicate, Collections.unmodifiableMap(readEntries(duplicate, offset, count)));
+    }
+    
+    /**
+     * Uses entries which have already been read from the central directory, see {@link ClassIndex}.
+     */
+    public static ZipIndex of(ByteBuffer buffer, Collection<Entry> entries) {
+        Map<String, Entry> map = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        for (Entry entry : entries) {
+            map.put(entry.getName(), entry);
+        }
+        
+        return new ZipIndex(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), Collections.unmodifiableMap(map));
+    }
+    
+    private static Map<String, Entry> readEntries(ByteBuffer duplicate, int offset, int count) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>(count * 4 / 3 + 1);
+        for (int index = 0; index < count; index++) {
+            if (duplicate.getInt(offset) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at " + offset);
+            }
+            
+            int method = duplicate.getShort(offset + 10) & 0xFFFF;
+            int compressedSize = duplicate.getInt(offset + 20);
+            int size = duplicate.getInt(offset + 24);
+            int nameLength = duplicate.getShort(offset + 28) & 0xFFFF;
+            int extraLength = duplicate.getShort(offset + 30) & 0xFFFF;
+            int commentLength = duplicate.getShort(offset + 32) & 0xFFFF;
+            int localHeaderOffset = duplicate.getInt(offset + 42);
+            
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = duplicate.duplicate();
+            nameBuffer.position(offset + CENTRAL_DIRECTORY_SIZE);
+            nameBuffer.get(nameBytes);
+            
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.put(name, new Entry(name, method, compressedSize, size, localHeaderOffset));
+            offset += CENTRAL_DIRECTORY_SIZE + nameLength + extraLength + commentLength;
+        }
+        
+        return entries;
+    }
+    
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+    
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+    
+    /**
+     * Returns the raw, possibly compressed, data of the entry without copying.
+     */
+    public ByteBuffer getData(Entry entry) throws IOException {
+        int offset = entry.getLocalHeaderOffset();
+        if (buffer.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.getName());
+        }
+        
+        int nameLength = buffer.getShort(offset + 26) & 0xFFFF;
+        int extraLength = buffer.getShort(offset + 28) & 0xFFFF;
+        int dataOffset = offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        
+        ByteBuffer data = buffer.duplicate();
+        data.limit(dataOffset + entry.getCompressedSize());
+        data.position(dataOffset);
+        return data.slice();
+    }
+    
+    public InputStream getInputStream(Entry entry) throws IOException {
+        ByteBuffer data = getData(entry);
+        if (entry.getMethod() == STORED) {
+            return new ByteBufferInputStream(data);
+        }
+        
+        if (entry.getMethod() == DEFLATED) {
+            // Inflater requires an extra dummy byte when nowrap is used
+            InputStream inputStream = new SequenceInputStream(new ByteBufferInputStream(data), new ByteArrayInputStream(new byte[1]));
+            return new InflaterInputStream(inputStream, new Inflater(true), 8192) {
+                
+                private boolean closed;
+                
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        inf.end();
+                        super.close();
+                    }
+                }
+            };
+        }
+        
+        throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+    }
+    
+    public byte[] getBytes(Entry entry) throws IOException {
+        ByteBuffer data = getData(entry);
+        if (entry.getMethod() == STORED) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return bytes;
+        }
+        
+        if (entry.getMethod() == DEFLATED) {
+            byte[] input = new byte[data.remaining() + 1];
+            data.get(input, 0, input.length - 1);
+            
+            byte[] bytes = new byte[entry.getSize()];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input);
+                int offset = 0;
+                while (offset < bytes.length && !inflater.finished()) {
+                    int length = inflater.inflate(bytes, offset, bytes.length - offset);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    
+                    offset += length;
+                }
+                
+                if (offset != bytes.length) {
+                    throw new ZipException("Truncated entry " + entry.getName());
+                }
+                
+                return bytes;
+            } catch (DataFormatException ex) {
+                throw new ZipException("Invalid entry " + entry.getName() + ": " + ex.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+        
+        throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+    }
+    
+    private static ByteBuffer read(FileChannel fileChannel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) == -1) {
+                throw new ZipException("Unexpected end of zip at " + (position + buffer.position()));
+            }
+        }
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+        int minimum = Math.max(0, buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - 0xFFFF);
+        for (int offset = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= minimum; offset--) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+        
+        throw new ZipException("End of central directory not found");
+    }
+    
+    public static class Entry {
+        
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localHeaderOffset;
+        
+        Entry(String name, int method, int compressedSize, int size, int localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+        
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getMethod() {
+            return method;
+        }
+        
+        public int getCompressedSize() {
+            return compressedSize;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+        
+        public int getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+    
+    private static class ByteBufferInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+        
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
\ No newline at end of file
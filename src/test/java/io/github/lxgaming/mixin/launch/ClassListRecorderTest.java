@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class ClassListRecorderTest {
+    
+    private static Path path;
+    
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        path = Files.createTempFile(MixinBootstrap.ID + "-", ".classlist");
+        System.setProperty(ClassListRecorder.PROPERTY, path.toString());
+    }
+    
+    @Test
+    public void testMixinClassesAreRecorded() throws Exception {
+        assertTrue(ClassListRecorder.isEnabled());
+        
+        // Stands in for this jar being appended to the class path on ModLauncher 4.x - 7.x, Mixin is in the same jar
+        Class<?> mixinClass = Class.forName("org.spongepowered.asm.launch.MixinBootstrap", false, getClass().getClassLoader());
+        Path jarPath = Paths.get(mixinClass.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ClassListRecorder.addLibrary(mixinClass.getClassLoader(), jarPath, ZipIndex.map(jarPath));
+        ClassListRecorder.report();
+        
+        List<String> classNames = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertTrue(classNames.contains("org/spongepowered/asm/launch/MixinBootstrap"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassPrewarmerTest {
+    
+    @Test
+    public void testTargetsAreNotLoaded() {
+        // Stands in for the TransformingClassLoader, loading a class would take the locks Mixin can deadlock against
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+            
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) {
+                throw new AssertionError("Loaded " + name);
+            }
+        };
+        
+        ClassPrewarmer.prewarm(classLoader, Arrays.asList(ClassPrewarmer.class.getName(), "io.github.lxgaming.mixin.launch.Missing"));
+        
+        Map<String, Long> metrics = Metrics.group("prewarm").snapshot();
+        assertEquals(Long.valueOf(2L), metrics.get("targets"));
+        assertEquals(Long.valueOf(1L), metrics.get("missing"));
+        assertEquals(Long.valueOf(0L), metrics.get("failed"));
+        assertTrue(metrics.get("bytes") > 0L);
+    }
+}
\ No newline at end of file
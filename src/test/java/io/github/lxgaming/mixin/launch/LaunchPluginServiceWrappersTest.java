@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongepowered.asm.launch.MixinLaunchPluginLegacy;
+import org.spongepowered.asm.launch.MixinTransformationServiceLegacy;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LaunchPluginServiceWrappersTest {
+    
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        System.setProperty(PrefilterLaunchPluginService.PROPERTY, "true");
+        System.setProperty(TransformationProfiler.PROPERTY, Files.createTempFile(MixinBootstrap.ID + "-", ".csv").toString());
+    }
+    
+    @Test
+    public void testMixinFindsItsOwnLaunchPlugin() {
+        Map<String, ILaunchPluginService> launchPluginServices = new HashMap<>();
+        IEnvironment environment = createEnvironment(launchPluginServices);
+        MixinLaunchPluginLegacy launchPluginService = new MixinLaunchPluginLegacy();
+        LaunchPluginServiceWrappers launchPluginServiceWrappers = new LaunchPluginServiceWrappers(launchPluginServices);
+        launchPluginServiceWrappers.register(launchPluginService);
+        assertSame(launchPluginService, launchPluginServices.get(launchPluginService.name()));
+        
+        try {
+            new MixinTransformationServiceLegacy().initialize(environment);
+        } catch (Throwable ex) {
+            // Mixin cannot start without a running ModLauncher, only the lookup of its launch plugin is under test
+            assertNotEquals("Mixin Launch Plugin Service could not be located", ex.getMessage());
+            assertNotEquals("Mixin Launch Plugin Service is present but not compatible", ex.getMessage());
+        }
+        
+        launchPluginServiceWrappers.install();
+        ILaunchPluginService prefilterLaunchPluginService = launchPluginServices.get(launchPluginService.name());
+        assertTrue(prefilterLaunchPluginService instanceof PrefilterLaunchPluginService);
+        
+        ILaunchPluginService profilingLaunchPluginService = ((DelegatingLaunchPluginService) prefilterLaunchPluginService).getLaunchPluginService();
+        assertTrue(profilingLaunchPluginService instanceof ProfilingLaunchPluginService);
+        assertSame(launchPluginService, ((DelegatingLaunchPluginService) profilingLaunchPluginService).getLaunchPluginService());
+    }
+    
+    @Test
+    public void testReplacedLaunchPluginIsLeftAlone() {
+        Map<String, ILaunchPluginService> launchPluginServices = new HashMap<>();
+        MixinLaunchPluginLegacy launchPluginService = new MixinLaunchPluginLegacy();
+        LaunchPluginServiceWrappers launchPluginServiceWrappers = new LaunchPluginServiceWrappers(launchPluginServices);
+        launchPluginServiceWrappers.register(launchPluginService);
+        
+        MixinLaunchPluginLegacy replacementLaunchPluginService = new MixinLaunchPluginLegacy();
+        launchPluginServices.put(replacementLaunchPluginService.name(), replacementLaunchPluginService);
+        launchPluginServiceWrappers.install();
+        assertSame(replacementLaunchPluginService, launchPluginServices.get(launchPluginService.name()));
+    }
+    
+    /**
+     * Resolves launch plugins the same way as ModLauncher, from the map the wrappers are installed into.
+     */
+    private static IEnvironment createEnvironment(Map<String, ILaunchPluginService> launchPluginServices) {
+        return (IEnvironment) Proxy.newProxyInstance(IEnvironment.class.getClassLoader(), new Class<?>[]{IEnvironment.class}, (proxy, method, args) -> {
+            if (method.getName().equals("findLaunchPlugin")) {
+                return Optional.ofNullable(launchPluginServices.get((String) args[0]));
+            }
+            
+            if (method.getName().equals("getProperty")) {
+                return Optional.empty();
+            }
+            
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
\ No newline at end of file
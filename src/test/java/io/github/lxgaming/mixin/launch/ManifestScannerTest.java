@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.mixin.launch;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongepowered.asm.launch.platform.container.ContainerHandleModLauncher;
+import org.spongepowered.asm.launch.platform.container.IContainerHandle;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+
+public class ManifestScannerTest {
+    
+    @BeforeClass
+    public static void setUpClass() {
+        System.setProperty(ManifestScanner.PROPERTY, "true");
+    }
+    
+    @Test
+    public void testMixinReadsTheScannedManifest() throws IOException {
+        Path gamePath = Files.createTempDirectory(MixinBootstrap.ID + "-");
+        Path path = Files.createDirectories(gamePath.resolve("mods")).resolve("mod.jar");
+        createJar(path, "mod.mixins.json");
+        
+        ManifestScanner.start(createEnvironment(gamePath));
+        ManifestScanner.apply(getClass().getClassLoader());
+        
+        // Mixin would read the rewritten manifest unless its lookup hits the seeded attributes
+        createJar(path, null);
+        
+        // The ModLauncher 4.x - 7.x launch plugin offers each mod to Mixin this way
+        ContainerHandleModLauncher containerHandle = new ContainerHandleModLauncher("test");
+        containerHandle.addResource(path.getFileName().toString(), gamePath.resolve("mods").resolve(path.getFileName()));
+        for (IContainerHandle nestedContainerHandle : containerHandle.getNestedContainers()) {
+            assertEquals("mod.mixins.json", nestedContainerHandle.getAttribute("MixinConfigs"));
+        }
+        
+        assertEquals(1, containerHandle.getNestedContainers().size());
+    }
+    
+    private static void createJar(Path path, String mixinConfigs) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mixinConfigs != null) {
+            manifest.getMainAttributes().putValue("MixinConfigs", mixinConfigs);
+        }
+        
+        try (JarOutputStream outputStream = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            outputStream.flush();
+        }
+    }
+    
+    private static IEnvironment createEnvironment(Path gamePath) {
+        return (IEnvironment) Proxy.newProxyInstance(IEnvironment.class.getClassLoader(), new Class<?>[]{IEnvironment.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getProperty")) {
+                // Only the game directory is read
+                return Optional.of(gamePath);
+            }
+            
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
\ No newline at end of file